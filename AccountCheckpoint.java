@@ -0,0 +1,44 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * AccountCheckpoint - Compact copy of an account's cash and positions.
+ *
+ * Fills carry millisecond timestamps that can repeat, so a checkpoint records
+ * the time of the last fill it includes and how many fills at that time it
+ * includes; replay skips exactly those.
+ */
+class AccountCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final long timestamp;
+    final double cash;
+    final String[] symbols;
+    final int[] shares;
+    final long lastFillTime;
+    final int fillsAtLastTime;
+
+    AccountCheckpoint(long timestamp, User user, long lastFillTime, int fillsAtLastTime) {
+        this.timestamp = timestamp;
+        this.cash = user.getCashBalance();
+        List<PortfolioHolding> holdings = user.getPortfolio().getHoldings();
+        this.symbols = new String[holdings.size()];
+        this.shares = new int[holdings.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = holdings.get(i).getSymbol();
+            shares[i] = holdings.get(i).getShares();
+        }
+        this.lastFillTime = lastFillTime;
+        this.fillsAtLastTime = fillsAtLastTime;
+    }
+
+    AccountCheckpoint(long timestamp, double cash, String[] symbols, int[] shares, long lastFillTime,
+            int fillsAtLastTime) {
+        this.timestamp = timestamp;
+        this.cash = cash;
+        this.symbols = symbols;
+        this.shares = shares;
+        this.lastFillTime = lastFillTime;
+        this.fillsAtLastTime = fillsAtLastTime;
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.*;
+
+/**
+ * AccountState - An account reconstructed as of a past time
+ */
+class AccountState {
+    private final String userId;
+    private final long asOf;
+    private double cash;
+    private final Map<String, Integer> shares = new TreeMap<>();
+    private double marketValue;
+    private int fillsReplayed;
+
+    AccountState(String userId, long asOf, AccountCheckpoint checkpoint) {
+        this.userId = userId;
+        this.asOf = asOf;
+        this.cash = checkpoint.cash;
+        for (int i = 0; i < checkpoint.symbols.length; i++) {
+            shares.put(checkpoint.symbols[i], checkpoint.shares[i]);
+        }
+    }
+
+    void apply(Transaction tx, int direction) {
+        int signed = "BUY".equals(tx.getType()) ? direction : -direction;
+        cash -= signed * tx.getTotalAmount();
+        int held = shares.getOrDefault(tx.getSymbol(), 0) + signed * tx.getShares();
+        if (held == 0) {
+            shares.remove(tx.getSymbol());
+        } else {
+            shares.put(tx.getSymbol(), held);
+        }
+        fillsReplayed++;
+    }
+
+    void markToMarket(PointInTimeStore store, TradingEngine engine) {
+        marketValue = 0;
+        for (Map.Entry<String, Integer> entry : shares.entrySet()) {
+            marketValue += entry.getValue() * store.priceAt(entry.getKey(), asOf, engine);
+        }
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public long getAsOf() {
+        return asOf;
+    }
+
+    public double getCash() {
+        return cash;
+    }
+
+    public Map<String, Integer> getShares() {
+        return Collections.unmodifiableMap(shares);
+    }
+
+    public double getMarketValue() {
+        return marketValue;
+    }
+
+    public double getTotalValue() {
+        return cash + marketValue;
+    }
+
+    /**
+     * Fills replayed (or undone) from the nearest checkpoint.
+     */
+    public int getFillsReplayed() {
+        return fillsReplayed;
+    }
+}
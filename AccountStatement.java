@@ -0,0 +1,119 @@
+import java.io.*;
+import java.time.*;
+import java.util.*;
+
+/**
+ * AccountStatement - One account's end-of-day cash, positions and activity
+ */
+class AccountStatement {
+    /**
+     * StatementLine - A position marked at the closing price
+     */
+    static class StatementLine {
+        final String symbol;
+        final int shares;
+        final double averageCost;
+        final double closePrice;
+
+        StatementLine(String symbol, int shares, double averageCost, double closePrice) {
+            this.symbol = symbol;
+            this.shares = shares;
+            this.averageCost = averageCost;
+            this.closePrice = closePrice;
+        }
+
+        double getMarketValue() {
+            return shares * closePrice;
+        }
+
+        double getUnrealizedGainLoss() {
+            return shares * (closePrice - averageCost);
+        }
+    }
+
+    private final String userId;
+    private final String name;
+    private final LocalDate sessionDate;
+    private final double cash;
+    private final List<StatementLine> lines;
+    private final int buys;
+    private final int sells;
+    private final double bought;
+    private final double sold;
+    private final double openingEquity; // NaN when no checkpoint reaches the open
+
+    AccountStatement(String userId, String name, LocalDate sessionDate, double cash, List<StatementLine> lines,
+            int buys, int sells, double bought, double sold, double openingEquity) {
+        this.userId = userId;
+        this.name = name;
+        this.sessionDate = sessionDate;
+        this.cash = cash;
+        this.lines = lines;
+        this.buys = buys;
+        this.sells = sells;
+        this.bought = bought;
+        this.sold = sold;
+        this.openingEquity = openingEquity;
+    }
+
+    public double getMarketValue() {
+        double value = 0;
+        for (StatementLine line : lines) {
+            value += line.getMarketValue();
+        }
+        return value;
+    }
+
+    public double getEquity() {
+        return cash + getMarketValue();
+    }
+
+    /**
+     * Equity change over the session, NaN when the opening equity is unknown.
+     */
+    public double getDayGainLoss() {
+        return getEquity() - openingEquity;
+    }
+
+    public void write(Writer out) throws IOException {
+        out.write(String.format("Statement for %s (%s), session %s%n%n", name, userId, sessionDate));
+        out.write(String.format("%-8s %10s %12s %12s %16s %16s%n", "Symbol", "Shares", "Avg Cost", "Close",
+                "Market Value", "Unrealized"));
+        for (StatementLine line : lines) {
+            out.write(String.format("%-8s %,10d %,12.2f %,12.2f %,16.2f %,16.2f%n", line.symbol, line.shares,
+                    line.averageCost, line.closePrice, line.getMarketValue(), line.getUnrealizedGainLoss()));
+        }
+        out.write(String.format("%nFills: %d buys ($%,.2f), %d sells ($%,.2f)%n", buys, bought, sells, sold));
+        out.write(String.format("Cash:           $%,16.2f%n", cash));
+        out.write(String.format("Market value:   $%,16.2f%n", getMarketValue()));
+        out.write(String.format("Equity:         $%,16.2f%n", getEquity()));
+        if (!Double.isNaN(openingEquity)) {
+            out.write(String.format("Opening equity: $%,16.2f%n", openingEquity));
+            out.write(String.format("Day gain/loss:  $%,16.2f%n", getDayGainLoss()));
+        }
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public LocalDate getSessionDate() {
+        return sessionDate;
+    }
+
+    public double getCash() {
+        return cash;
+    }
+
+    public List<StatementLine> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    public int getFillCount() {
+        return buys + sells;
+    }
+
+    public double getOpeningEquity() {
+        return openingEquity;
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.*;
+
+/**
+ * ColumnCodec - Varint, zigzag and fixed-point helpers for compact binary formats
+ */
+final class ColumnCodec {
+    static final long PRICE_SCALE = 10000L;
+
+    private ColumnCodec() {
+    }
+
+    static long toFixed(double price) {
+        return Math.round(price * PRICE_SCALE);
+    }
+
+    static double fromFixed(long fixed) {
+        return fixed / (double) PRICE_SCALE;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, zigzag(value));
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readSignedVarLong(DataInput in) throws IOException {
+        return unzigzag(readVarLong(in));
+    }
+}
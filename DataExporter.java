@@ -0,0 +1,561 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.*;
+
+/**
+ * DataExporter - Streams fills and positions out for reconciliation and
+ * analytics.
+ *
+ * The selected accounts are split into partitions written in parallel, one
+ * worker and one output per partition. Each account's history is streamed
+ * from the archive a segment at a time followed by its recent rows, so
+ * memory stays bounded whatever the history size, and the live engine is
+ * only touched through short per-account locks: trading is never paused.
+ *
+ * CSV output is one transactions-NNNNN.csv / positions-NNNNN.csv per
+ * partition. Columnar transactions reuse the history archive layout, one
+ * directory of segments per account under transactions/, so the export can
+ * be read back with TransactionArchive; columnar positions are deflated
+ * blocks of dictionary-coded columns in positions-NNNNN.pos, read back with
+ * readPositions(). Files are written under a temporary name and moved into
+ * place when complete.
+ *
+ * Run from the command line it exports a history archive directory, or,
+ * with --data, the data file and archive of a platform that is not running;
+ * only then can --positions add the positions, under positions/.
+ */
+class DataExporter {
+    static final String TRANSACTIONS = "transactions";
+    static final String POSITIONS = "positions";
+
+    private static final int POSITION_MAGIC = 0x504F5358; // "POSX"
+    private static final int POSITION_VERSION = 1;
+    private static final int POSITION_BLOCK_ROWS = 4096;
+
+    private final TradingEngine engine; // null when exporting from an archive directory
+    private final File archiveDir;
+    private int partitions = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) throws Exception {
+        File archiveDir = null;
+        File outputDir = null;
+        String dataFile = null;
+        ExportFormat format = ExportFormat.CSV;
+        ExportFilter filter = new ExportFilter();
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        boolean positions = false;
+        int partitions = 0;
+        try {
+            List<String> positional = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (option.equals("--positions")) {
+                    positions = true;
+                    continue;
+                }
+                if (!option.startsWith("--")) {
+                    positional.add(option);
+                    continue;
+                }
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("missing value for " + option);
+                String value = args[++i];
+                switch (option) {
+                    case "--format":
+                        format = ExportFormat.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--data":
+                        dataFile = value;
+                        break;
+                    case "--accounts":
+                        filter.withAccounts(Arrays.asList(value.split(",")));
+                        break;
+                    case "--symbols":
+                        filter.withSymbols(Arrays.asList(value.split(",")));
+                        break;
+                    case "--from":
+                        from = Instant.parse(value).toEpochMilli();
+                        break;
+                    case "--to":
+                        to = Instant.parse(value).toEpochMilli();
+                        break;
+                    case "--partitions":
+                        partitions = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + option);
+                }
+            }
+            if (positional.size() != 2)
+                throw new IllegalArgumentException("expected an archive directory and an output directory");
+            if (positions && dataFile == null)
+                throw new IllegalArgumentException("--positions needs --data");
+            archiveDir = new File(positional.get(0));
+            outputDir = new File(positional.get(1));
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: DataExporter <archiveDir> <outputDir> [--format csv|columnar]");
+            System.err.println("           [--accounts ID,...] [--symbols SYM,...] [--from INSTANT] [--to INSTANT]");
+            System.err.println("           [--partitions N] [--data FILE [--positions]]");
+            System.exit(2);
+            return;
+        }
+        filter.withTimeRange(from, to);
+
+        TradingEngine engine = dataFile == null ? null : new TradingEngine(dataFile, archiveDir.getPath());
+        boolean failed = false;
+        try {
+            DataExporter exporter = engine == null ? fromArchive(archiveDir) : live(engine);
+            if (partitions > 0) {
+                exporter.setPartitions(partitions);
+            }
+            System.out.println("transactions: " + exporter.exportTransactions(outputDir, format, filter));
+            if (positions) {
+                // each export needs a directory of its own
+                System.out.println("positions: " + exporter.exportPositions(new File(outputDir, POSITIONS), format,
+                        filter));
+            }
+        } catch (IOException e) {
+            System.err.println("Error exporting: " + e.getMessage());
+            failed = true;
+        } finally {
+            if (engine != null) {
+                engine.shutdown();
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private DataExporter(TradingEngine engine, File archiveDir) {
+        this.engine = engine;
+        this.archiveDir = archiveDir;
+    }
+
+    /**
+     * Exports from a running engine: archived and recent fills, and current
+     * positions at live prices.
+     */
+    static DataExporter live(TradingEngine engine) {
+        return new DataExporter(engine, null);
+    }
+
+    /**
+     * Exports the fills in a history archive directory without an engine.
+     * Rows not yet rolled out of the data file are not included and there
+     * are no positions.
+     */
+    static DataExporter fromArchive(File archiveDir) {
+        return new DataExporter(null, archiveDir);
+    }
+
+    public void setPartitions(int partitions) {
+        if (partitions < 1)
+            throw new IllegalArgumentException("Partitions must be positive: " + partitions);
+        this.partitions = partitions;
+    }
+
+    public ExportReport exportTransactions(File directory, ExportFormat format, ExportFilter filter)
+            throws IOException {
+        List<String> accounts = selectAccounts(filter);
+        return run(directory, accounts, (partition, ids, rows) -> {
+            if (format == ExportFormat.CSV) {
+                File target = new File(directory, String.format("%s-%05d.csv", TRANSACTIONS, partition));
+                writeAtomically(target, out -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+                    writer.write("account,transaction_id,timestamp,symbol,type,shares,price,amount,lot_method,lot_id\n");
+                    StringBuilder line = new StringBuilder(128);
+                    for (String userId : ids) {
+                        scan(userId, filter, tx -> {
+                            line.setLength(0);
+                            appendCsv(line, userId).append(',');
+                            appendCsv(line, tx.getTransactionId()).append(',');
+                            line.append(Instant.ofEpochMilli(tx.getTimestamp().getTime())).append(',');
+                            appendCsv(line, tx.getSymbol()).append(',');
+                            line.append(tx.getType()).append(',');
+                            line.append(tx.getShares()).append(',');
+                            appendDecimal(line, tx.getPrice()).append(',');
+                            appendDecimal(line, tx.getTotalAmount()).append(',');
+                            line.append(tx.getLotMethod() == null ? "" : tx.getLotMethod().name()).append(',');
+                            line.append(tx.getLotId()).append('\n');
+                            write(writer, line);
+                            rows.incrementAndGet();
+                        });
+                    }
+                    writer.flush();
+                });
+                return Collections.singletonList(target);
+            }
+            List<File> written = new ArrayList<>();
+            for (String userId : ids) {
+                File accountDir = new File(new File(directory, TRANSACTIONS), userId);
+                TransactionArchive archive = new TransactionArchive(accountDir);
+                List<Transaction> batch = new ArrayList<>(TransactionArchive.SEGMENT_ROWS);
+                IOException[] failure = new IOException[1];
+                scan(userId, filter, tx -> {
+                    batch.add(tx);
+                    if (batch.size() == TransactionArchive.SEGMENT_ROWS) {
+                        appendBatch(archive, batch, failure);
+                    }
+                    rows.incrementAndGet();
+                });
+                appendBatch(archive, batch, failure);
+                if (failure[0] != null)
+                    throw failure[0];
+                if (archive.getSegmentCount() > 0) {
+                    written.add(accountDir);
+                }
+            }
+            return written;
+        });
+    }
+
+    /**
+     * Exports current holdings marked at live prices; the time range of the
+     * filter does not apply.
+     */
+    public ExportReport exportPositions(File directory, ExportFormat format, ExportFilter filter)
+            throws IOException {
+        if (engine == null)
+            throw new IllegalStateException("Positions can only be exported from a running engine");
+        List<String> accounts = selectAccounts(filter);
+        return run(directory, accounts, (partition, ids, rows) -> {
+            String suffix = format == ExportFormat.CSV ? ".csv" : ".pos";
+            File target = new File(directory, String.format("%s-%05d%s", POSITIONS, partition, suffix));
+            writeAtomically(target, out -> {
+                if (format == ExportFormat.CSV) {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+                    writer.write("account,symbol,shares,average_cost,price,market_value,unrealized\n");
+                    StringBuilder line = new StringBuilder(96);
+                    for (String userId : ids) {
+                        for (PositionRow row : positionsOf(userId, filter)) {
+                            line.setLength(0);
+                            appendCsv(line, row.userId).append(',');
+                            appendCsv(line, row.symbol).append(',');
+                            line.append(row.shares).append(',');
+                            appendDecimal(line, row.averageCost).append(',');
+                            appendDecimal(line, row.price).append(',');
+                            appendDecimal(line, row.getMarketValue()).append(',');
+                            appendDecimal(line, row.getUnrealizedGainLoss()).append('\n');
+                            write(writer, line);
+                            rows.incrementAndGet();
+                        }
+                    }
+                    writer.flush();
+                } else {
+                    PositionBlockWriter writer = new PositionBlockWriter(out);
+                    for (String userId : ids) {
+                        for (PositionRow row : positionsOf(userId, filter)) {
+                            writer.add(row);
+                            rows.incrementAndGet();
+                        }
+                    }
+                    writer.finish();
+                }
+            });
+            return Collections.singletonList(target);
+        });
+    }
+
+    /**
+     * Streams the rows of a columnar positions file.
+     */
+    static void readPositions(File file, Consumer<PositionRow> action) throws IOException {
+        try (DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (header.readInt() != POSITION_MAGIC)
+                throw new IOException("Not a positions export");
+            int version = header.readInt();
+            if (version != POSITION_VERSION)
+                throw new IOException("Unsupported positions version " + version);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(header), 8192));
+            while (true) {
+                int n = (int) ColumnCodec.readVarLong(in);
+                if (n == 0)
+                    return;
+                String[] accounts = readDictionary(in);
+                String[] symbols = readDictionary(in);
+                int[] accountIds = new int[n];
+                int[] symbolIds = new int[n];
+                int[] shares = new int[n];
+                long[] costs = new long[n];
+                long[] prices = new long[n];
+                for (int i = 0; i < n; i++) {
+                    accountIds[i] = (int) ColumnCodec.readVarLong(in);
+                }
+                for (int i = 0; i < n; i++) {
+                    symbolIds[i] = (int) ColumnCodec.readVarLong(in);
+                }
+                for (int i = 0; i < n; i++) {
+                    shares[i] = (int) ColumnCodec.readSignedVarLong(in);
+                }
+                for (int i = 0; i < n; i++) {
+                    costs[i] = ColumnCodec.readSignedVarLong(in);
+                }
+                for (int i = 0; i < n; i++) {
+                    prices[i] = ColumnCodec.readSignedVarLong(in);
+                }
+                for (int i = 0; i < n; i++) {
+                    action.accept(new PositionRow(accounts[accountIds[i]], symbols[symbolIds[i]], shares[i],
+                            ColumnCodec.fromFixed(costs[i]), ColumnCodec.fromFixed(prices[i])));
+                }
+            }
+        }
+    }
+
+    // Partitioning
+
+    /**
+     * Writes one partition's accounts and returns the files it produced.
+     */
+    private interface PartitionWriter {
+        List<File> write(int partition, List<String> userIds, AtomicLong rows) throws IOException;
+    }
+
+    private ExportReport run(File directory, List<String> accounts, PartitionWriter writer) throws IOException {
+        long start = System.nanoTime();
+        String[] existing = directory.list();
+        if (existing != null && existing.length > 0)
+            throw new IOException("Export directory is not empty: " + directory);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create export directory " + directory);
+
+        int count = Math.max(1, Math.min(partitions, accounts.size()));
+        AtomicLong rows = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(count, r -> {
+            Thread thread = new Thread(r, "export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<File> files = new ArrayList<>();
+        try {
+            List<Future<List<File>>> futures = new ArrayList<>(count);
+            for (int p = 0; p < count; p++) {
+                int partition = p;
+                List<String> ids = accounts.subList(accounts.size() * p / count, accounts.size() * (p + 1) / count);
+                futures.add(pool.submit(() -> writer.write(partition, ids, rows)));
+            }
+            for (Future<List<File>> future : futures) {
+                files.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        long bytes = 0;
+        for (File file : files) {
+            bytes += sizeOf(file);
+        }
+        return new ExportReport(accounts.size(), rows.get(), files.size(), bytes,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    private List<String> selectAccounts(ExportFilter filter) {
+        List<String> ids = new ArrayList<>();
+        if (engine != null) {
+            for (User user : engine.getAccounts()) {
+                ids.add(user.getUserId());
+            }
+        } else {
+            String[] names = archiveDir.list((dir, name) -> new File(dir, name).isDirectory());
+            if (names != null) {
+                ids.addAll(Arrays.asList(names));
+            }
+        }
+        ids.removeIf(id -> !filter.includesAccount(id));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private void scan(String userId, ExportFilter filter, Consumer<Transaction> action) throws IOException {
+        Consumer<Transaction> filtered = tx -> {
+            if (filter.includesSymbol(tx.getSymbol())) {
+                action.accept(tx);
+            }
+        };
+        if (engine != null) {
+            User user = engine.getAccount(userId);
+            if (user != null) {
+                engine.scanTransactionHistory(user, filter.getFromMillis(), filter.getToMillis(), filtered);
+            }
+        } else {
+            new TransactionArchive(new File(archiveDir, userId)).forEach(filter.getFromMillis(),
+                    filter.getToMillis(), filtered);
+        }
+    }
+
+    private List<PositionRow> positionsOf(String userId, ExportFilter filter) {
+        User user = engine.getAccount(userId);
+        if (user == null)
+            return Collections.emptyList();
+        List<PositionRow> rows = new ArrayList<>();
+        synchronized (user) {
+            for (PortfolioHolding holding : user.getPortfolio().getHoldings()) {
+                if (holding.getShares() == 0 || !filter.includesSymbol(holding.getSymbol()))
+                    continue;
+                rows.add(new PositionRow(userId, holding.getSymbol(), holding.getShares(), holding.getAverageCost(),
+                        engine.getLastPrice(holding.getSymbol(), holding.getAverageCost())));
+            }
+        }
+        return rows;
+    }
+
+    private static void appendBatch(TransactionArchive archive, List<Transaction> batch, IOException[] failure) {
+        if (batch.isEmpty() || failure[0] != null)
+            return;
+        try {
+            archive.append(batch);
+        } catch (IOException e) {
+            failure[0] = e;
+        }
+        batch.clear();
+    }
+
+    // Output helpers
+
+    private interface StreamBody {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static void writeAtomically(File target, StreamBody body) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 65536)) {
+                body.write(out);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    private static void write(Writer writer, CharSequence line) {
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a plain decimal; append(double) switches to scientific notation
+     * from 1e7 up, which CSV readers do not all parse.
+     */
+    private static StringBuilder appendDecimal(StringBuilder line, double value) {
+        if (!Double.isFinite(value))
+            return line.append(value);
+        return line.append(BigDecimal.valueOf(value).toPlainString());
+    }
+
+    private static StringBuilder appendCsv(StringBuilder line, String value) {
+        if (value == null)
+            return line;
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+            return line.append(value);
+        return line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static String[] readDictionary(DataInputStream in) throws IOException {
+        String[] values = new String[(int) ColumnCodec.readVarLong(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile())
+            return file.length();
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * PositionBlockWriter - Buffers positions into dictionary-coded column
+     * blocks; a zero row count ends the stream
+     */
+    private static class PositionBlockWriter {
+        private final DeflaterOutputStream deflater;
+        private final DataOutputStream out;
+        private final List<PositionRow> block = new ArrayList<>(POSITION_BLOCK_ROWS);
+
+        PositionBlockWriter(OutputStream target) throws IOException {
+            DataOutputStream header = new DataOutputStream(target);
+            header.writeInt(POSITION_MAGIC);
+            header.writeInt(POSITION_VERSION);
+            header.flush();
+            deflater = new DeflaterOutputStream(target, new Deflater(Deflater.BEST_SPEED), 8192);
+            out = new DataOutputStream(deflater);
+        }
+
+        void add(PositionRow row) throws IOException {
+            block.add(row);
+            if (block.size() == POSITION_BLOCK_ROWS) {
+                flushBlock();
+            }
+        }
+
+        void finish() throws IOException {
+            flushBlock();
+            ColumnCodec.writeVarLong(out, 0);
+            out.flush();
+            deflater.finish();
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.isEmpty())
+                return;
+            Map<String, Integer> accounts = new LinkedHashMap<>();
+            Map<String, Integer> symbols = new LinkedHashMap<>();
+            for (PositionRow row : block) {
+                accounts.putIfAbsent(row.userId, accounts.size());
+                symbols.putIfAbsent(row.symbol, symbols.size());
+            }
+            ColumnCodec.writeVarLong(out, block.size());
+            writeDictionary(accounts.keySet());
+            writeDictionary(symbols.keySet());
+            for (PositionRow row : block) {
+                ColumnCodec.writeVarLong(out, accounts.get(row.userId));
+            }
+            for (PositionRow row : block) {
+                ColumnCodec.writeVarLong(out, symbols.get(row.symbol));
+            }
+            for (PositionRow row : block) {
+                ColumnCodec.writeSignedVarLong(out, row.shares);
+            }
+            for (PositionRow row : block) {
+                ColumnCodec.writeSignedVarLong(out, ColumnCodec.toFixed(row.averageCost));
+            }
+            for (PositionRow row : block) {
+                ColumnCodec.writeSignedVarLong(out, ColumnCodec.toFixed(row.price));
+            }
+            block.clear();
+        }
+
+        private void writeDictionary(Set<String> values) throws IOException {
+            ColumnCodec.writeVarLong(out, values.size());
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.*;
+
+/**
+ * DepthBook - Aggregated price levels of one symbol.
+ *
+ * Each side is a sorted pair of primitive arrays (price in ticks, size),
+ * best level first, so a level change is a binary search and a short shift.
+ * Every change bumps the book's sequence number.
+ */
+class DepthBook {
+    private final String symbol;
+    private final double tickSize;
+    private final Side bids = new Side(true);
+    private final Side asks = new Side(false);
+    private long sequence;
+
+    DepthBook(String symbol, double tickSize) {
+        this.symbol = symbol;
+        this.tickSize = tickSize;
+    }
+
+    /**
+     * Sets the size at a price level, removing it when size is 0.
+     */
+    synchronized void setLevel(boolean bid, long priceTicks, long size) {
+        if ((bid ? bids : asks).set(priceTicks, size)) {
+            sequence++;
+        }
+    }
+
+    synchronized long getSize(boolean bid, long priceTicks) {
+        return (bid ? bids : asks).get(priceTicks);
+    }
+
+    /**
+     * Copies up to `depth` best levels of a side; returns how many.
+     */
+    synchronized int copyLevels(boolean bid, int depth, long[] prices, long[] sizes) {
+        Side side = bid ? bids : asks;
+        int n = Math.min(depth, side.count);
+        System.arraycopy(side.prices, 0, prices, 0, n);
+        System.arraycopy(side.sizes, 0, sizes, 0, n);
+        return n;
+    }
+
+    synchronized int levelCount(boolean bid) {
+        return (bid ? bids : asks).count;
+    }
+
+    synchronized long getSequence() {
+        return sequence;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    double toPrice(long ticks) {
+        return ticks * tickSize;
+    }
+
+    /**
+     * Side - Levels sorted best first: descending for bids, ascending for asks
+     */
+    private static class Side {
+        final boolean descending;
+        long[] prices = new long[32];
+        long[] sizes = new long[32];
+        int count;
+
+        Side(boolean descending) {
+            this.descending = descending;
+        }
+
+        private int find(long price) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                long p = prices[mid];
+                if (p == price)
+                    return mid;
+                if (descending ? p > price : p < price) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        long get(long price) {
+            int at = find(price);
+            return at >= 0 ? sizes[at] : 0;
+        }
+
+        boolean set(long price, long size) {
+            int at = find(price);
+            if (at >= 0) {
+                if (size == sizes[at])
+                    return false;
+                if (size > 0) {
+                    sizes[at] = size;
+                } else {
+                    System.arraycopy(prices, at + 1, prices, at, count - at - 1);
+                    System.arraycopy(sizes, at + 1, sizes, at, count - at - 1);
+                    count--;
+                }
+                return true;
+            }
+            if (size <= 0)
+                return false;
+            at = -(at + 1);
+            if (count == prices.length) {
+                prices = Arrays.copyOf(prices, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            System.arraycopy(prices, at, prices, at + 1, count - at);
+            System.arraycopy(sizes, at, sizes, at + 1, count - at);
+            prices[at] = price;
+            sizes[at] = size;
+            count++;
+            return true;
+        }
+    }
+}
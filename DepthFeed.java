@@ -0,0 +1,132 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * DepthFeed - L2 depth per symbol with conflated, depth-limited fan-out.
+ *
+ * The engine has no resting orders yet, so each book is fed by simulated
+ * liquidity around the last price: on every tick the ladder is re-centred
+ * and a few level sizes move. Books are only kept for symbols somebody
+ * subscribes to.
+ *
+ * A subscription never queues messages. A book change only marks the
+ * subscription dirty and schedules one delivery on its executor; the
+ * delivery diffs the current top `depth` levels against what that
+ * subscriber last saw. However many ticks pass before it runs, the
+ * subscriber receives a single update, so a slow consumer costs memory
+ * proportional to its depth, not to the message rate. Every
+ * SNAPSHOT_INTERVAL updates, and on request after a gap, it gets a full
+ * snapshot instead.
+ */
+class DepthFeed implements EngineListener {
+    static final int LEVELS_PER_SIDE = 20;
+    static final int SNAPSHOT_INTERVAL = 100;
+
+    private final TradingEngine engine;
+    private final Map<String, BookState> books = new ConcurrentHashMap<>();
+
+    DepthFeed(TradingEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Subscribes to a symbol's top `depth` levels per side; the listener is
+     * called on the executor, one message at a time.
+     */
+    public DepthSubscription subscribe(String symbol, int depth, Executor executor, DepthListener listener) {
+        Stock stock = engine.getStock(symbol);
+        if (stock == null)
+            throw new IllegalArgumentException("Unknown symbol " + symbol);
+        DepthSubscription[] subscription = new DepthSubscription[1];
+        // Attached inside compute so a tick cannot drop the book in between
+        books.compute(symbol, (s, state) -> {
+            if (state == null) {
+                state = new BookState(new DepthBook(s, stock.getTickSize()));
+                refreshLiquidity(state, stock);
+            }
+            subscription[0] = new DepthSubscription(state, Math.min(depth, LEVELS_PER_SIDE), executor, listener);
+            state.subscriptions.add(subscription[0]);
+            return state;
+        });
+        subscription[0].requestSnapshot();
+        return subscription[0];
+    }
+
+    @Override
+    public void onTick(Collection<Stock> stocks) {
+        for (BookState state : books.values()) {
+            if (state.subscriptions.isEmpty()) {
+                books.computeIfPresent(state.book.getSymbol(), (s, v) -> v.subscriptions.isEmpty() ? null : v);
+                continue;
+            }
+            Stock stock = engine.getStock(state.book.getSymbol());
+            if (stock == null)
+                continue; // delisted; subscribers keep the last book
+            if (refreshLiquidity(state, stock)) {
+                for (DepthSubscription subscription : state.subscriptions) {
+                    subscription.markDirty();
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-centres the simulated ladder on the stock's price: levels that left
+     * the window are removed, new ones appear, and some sizes change.
+     */
+    private static boolean refreshLiquidity(BookState state, Stock stock) {
+        DepthBook book = state.book;
+        Random random = state.random;
+        long before = book.getSequence();
+        long mid = Math.round(stock.getCurrentPrice() / book.getTickSize());
+        long bestBid = mid - 1 - random.nextInt(2);
+        long bestAsk = mid + 1 + random.nextInt(2);
+        long lot = stock.getLotSize();
+        synchronized (book) {
+            trim(book, true, bestBid - LEVELS_PER_SIDE + 1, bestBid);
+            trim(book, false, bestAsk, bestAsk + LEVELS_PER_SIDE - 1);
+            for (int i = 0; i < LEVELS_PER_SIDE; i++) {
+                fill(book, random, true, bestBid - i, i, lot);
+                fill(book, random, false, bestAsk + i, i, lot);
+            }
+        }
+        return book.getSequence() != before;
+    }
+
+    private static void trim(DepthBook book, boolean bid, long low, long high) {
+        long[] prices = new long[book.levelCount(bid)];
+        long[] sizes = new long[prices.length];
+        int n = book.copyLevels(bid, prices.length, prices, sizes);
+        for (int i = 0; i < n; i++) {
+            if (prices[i] < low || prices[i] > high) {
+                book.setLevel(bid, prices[i], 0);
+            }
+        }
+    }
+
+    private static void fill(DepthBook book, Random random, boolean bid, long price, int level, long lot) {
+        long size = book.getSize(bid, price);
+        if (size == 0 || random.nextInt(5) == 0) {
+            // Liquidity thickens away from the touch
+            long lots = 1 + random.nextInt(10 + level * 5);
+            book.setLevel(bid, price, lots * lot * 100);
+        }
+    }
+
+    public int getBookCount() {
+        return books.size();
+    }
+
+    /**
+     * BookState - A book with its subscribers and liquidity source
+     */
+    static class BookState {
+        final DepthBook book;
+        final List<DepthSubscription> subscriptions = new CopyOnWriteArrayList<>();
+        final Random random = new Random();
+
+        BookState(DepthBook book) {
+            this.book = book;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * DepthListener - Receives a symbol's depth: a snapshot first, then updates
+ */
+interface DepthListener {
+    void onSnapshot(DepthSnapshot snapshot);
+
+    void onUpdate(DepthUpdate update);
+}
@@ -0,0 +1,21 @@
+/**
+ * DepthSnapshot - Full aggregated depth of one symbol, best levels first
+ */
+class DepthSnapshot {
+    final String symbol;
+    final long sequence;
+    final double[] bidPrices;
+    final long[] bidSizes;
+    final double[] askPrices;
+    final long[] askSizes;
+
+    DepthSnapshot(String symbol, long sequence, double[] bidPrices, long[] bidSizes, double[] askPrices,
+            long[] askSizes) {
+        this.symbol = symbol;
+        this.sequence = sequence;
+        this.bidPrices = bidPrices;
+        this.bidSizes = bidSizes;
+        this.askPrices = askPrices;
+        this.askSizes = askSizes;
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * DepthSubscription - One subscriber's conflated view of a book
+ */
+class DepthSubscription {
+    private final DepthFeed.BookState state;
+    private final int depth;
+    private final Executor executor;
+    private final DepthListener listener;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean snapshotRequested;
+    private volatile boolean cancelled;
+
+    // What the subscriber has seen; only touched inside deliver()
+    private final long[][] seenPrices;
+    private final long[][] seenSizes;
+    private final int[] seenCount = new int[2];
+    private final long[][] scratchPrices;
+    private final long[][] scratchSizes;
+    private long lastSequence;
+    private int updatesSinceSnapshot;
+
+    private final AtomicLong conflated = new AtomicLong();
+    private volatile long updatesSent;
+    private volatile long snapshotsSent;
+
+    DepthSubscription(DepthFeed.BookState state, int depth, Executor executor, DepthListener listener) {
+        this.state = state;
+        this.depth = depth;
+        this.executor = executor;
+        this.listener = listener;
+        seenPrices = new long[2][depth];
+        seenSizes = new long[2][depth];
+        scratchPrices = new long[2][depth];
+        scratchSizes = new long[2][depth];
+    }
+
+    /**
+     * Asks for a full snapshot with the next delivery, e.g. after a
+     * sequence gap or when a subscriber restarts.
+     */
+    public void requestSnapshot() {
+        snapshotRequested = true;
+        markDirty();
+    }
+
+    public void cancel() {
+        cancelled = true;
+        state.subscriptions.remove(this);
+    }
+
+    void markDirty() {
+        if (cancelled)
+            return;
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::deliver);
+        } else {
+            conflated.incrementAndGet();
+        }
+    }
+
+    private synchronized void deliver() {
+        scheduled.set(false);
+        if (cancelled)
+            return;
+        DepthBook book = state.book;
+        long sequence;
+        int[] count = new int[2];
+        synchronized (book) {
+            sequence = book.getSequence();
+            count[0] = book.copyLevels(true, depth, scratchPrices[0], scratchSizes[0]);
+            count[1] = book.copyLevels(false, depth, scratchPrices[1], scratchSizes[1]);
+        }
+        if (sequence == lastSequence && !snapshotRequested)
+            return;
+
+        if (snapshotRequested || updatesSinceSnapshot >= DepthFeed.SNAPSHOT_INTERVAL) {
+            snapshotRequested = false;
+            updatesSinceSnapshot = 0;
+            remember(count, sequence);
+            snapshotsSent++;
+            listener.onSnapshot(new DepthSnapshot(book.getSymbol(), sequence, prices(book, 0), sizes(0),
+                    prices(book, 1), sizes(1)));
+            return;
+        }
+
+        // Diff the two best-first ladders side by side
+        int max = 2 * (seenCount[0] + count[0] + seenCount[1] + count[1]);
+        byte[] sides = new byte[max];
+        double[] prices = new double[max];
+        long[] sizes = new long[max];
+        int n = 0;
+        for (int s = 0; s < 2; s++) {
+            boolean bid = s == 0;
+            long[] oldP = seenPrices[s];
+            long[] oldS = seenSizes[s];
+            long[] newP = scratchPrices[s];
+            long[] newS = scratchSizes[s];
+            int i = 0;
+            int j = 0;
+            while (i < seenCount[s] || j < count[s]) {
+                boolean takeOld;
+                boolean takeNew;
+                if (i == seenCount[s]) {
+                    takeOld = false;
+                    takeNew = true;
+                } else if (j == count[s]) {
+                    takeOld = true;
+                    takeNew = false;
+                } else if (oldP[i] == newP[j]) {
+                    takeOld = true;
+                    takeNew = true;
+                } else {
+                    takeOld = bid ? oldP[i] > newP[j] : oldP[i] < newP[j];
+                    takeNew = !takeOld;
+                }
+                if (takeOld && takeNew) {
+                    if (oldS[i] != newS[j]) {
+                        sides[n] = bid ? DepthUpdate.BID : DepthUpdate.ASK;
+                        prices[n] = book.toPrice(newP[j]);
+                        sizes[n++] = newS[j];
+                    }
+                    i++;
+                    j++;
+                } else if (takeOld) {
+                    sides[n] = bid ? DepthUpdate.BID : DepthUpdate.ASK;
+                    prices[n] = book.toPrice(oldP[i++]);
+                    sizes[n++] = 0;
+                } else {
+                    sides[n] = bid ? DepthUpdate.BID : DepthUpdate.ASK;
+                    prices[n] = book.toPrice(newP[j]);
+                    sizes[n++] = newS[j++];
+                }
+            }
+        }
+        if (n == 0)
+            return; // changes were all below this subscriber's depth; it is still at lastSequence
+        long previous = lastSequence;
+        remember(count, sequence);
+        updatesSinceSnapshot++;
+        updatesSent++;
+        listener.onUpdate(new DepthUpdate(book.getSymbol(), previous, sequence, n, Arrays.copyOf(sides, n),
+                Arrays.copyOf(prices, n), Arrays.copyOf(sizes, n)));
+    }
+
+    private void remember(int[] count, long sequence) {
+        for (int s = 0; s < 2; s++) {
+            System.arraycopy(scratchPrices[s], 0, seenPrices[s], 0, count[s]);
+            System.arraycopy(scratchSizes[s], 0, seenSizes[s], 0, count[s]);
+            seenCount[s] = count[s];
+        }
+        lastSequence = sequence;
+    }
+
+    private double[] prices(DepthBook book, int side) {
+        double[] prices = new double[seenCount[side]];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = book.toPrice(seenPrices[side][i]);
+        }
+        return prices;
+    }
+
+    private long[] sizes(int side) {
+        return Arrays.copyOf(seenSizes[side], seenCount[side]);
+    }
+
+    public String getSymbol() {
+        return state.book.getSymbol();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Book changes folded into a pending delivery instead of sent.
+     */
+    public long getConflated() {
+        return conflated.get();
+    }
+
+    public long getUpdatesSent() {
+        return updatesSent;
+    }
+
+    public long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+}
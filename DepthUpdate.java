@@ -0,0 +1,27 @@
+/**
+ * DepthUpdate - Changed price levels since the subscriber's previous message.
+ * A size of 0 removes the level. Applies only on top of previousSequence.
+ */
+class DepthUpdate {
+    static final byte BID = 'B';
+    static final byte ASK = 'A';
+
+    final String symbol;
+    final long previousSequence;
+    final long sequence;
+    final int count;
+    final byte[] sides;
+    final double[] prices;
+    final long[] sizes;
+
+    DepthUpdate(String symbol, long previousSequence, long sequence, int count, byte[] sides, double[] prices,
+            long[] sizes) {
+        this.symbol = symbol;
+        this.previousSequence = previousSequence;
+        this.sequence = sequence;
+        this.count = count;
+        this.sides = sides;
+        this.prices = prices;
+        this.sizes = sizes;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.*;
+
+/**
+ * DepthView - Client-side ladder rebuilt from a depth subscription.
+ *
+ * Applies updates only on top of the sequence it holds and asks for a fresh
+ * snapshot when one does not line up.
+ */
+class DepthView implements DepthListener {
+    private final TreeMap<Double, Long> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final TreeMap<Double, Long> asks = new TreeMap<>();
+    private DepthSubscription subscription;
+    private long sequence = -1;
+    private long gaps;
+
+    void attach(DepthSubscription subscription) {
+        this.subscription = subscription;
+    }
+
+    @Override
+    public void onSnapshot(DepthSnapshot snapshot) {
+        bids.clear();
+        asks.clear();
+        for (int i = 0; i < snapshot.bidPrices.length; i++) {
+            bids.put(snapshot.bidPrices[i], snapshot.bidSizes[i]);
+        }
+        for (int i = 0; i < snapshot.askPrices.length; i++) {
+            asks.put(snapshot.askPrices[i], snapshot.askSizes[i]);
+        }
+        sequence = snapshot.sequence;
+    }
+
+    @Override
+    public void onUpdate(DepthUpdate update) {
+        if (update.previousSequence != sequence) {
+            gaps++;
+            if (subscription != null) {
+                subscription.requestSnapshot();
+            }
+            return;
+        }
+        for (int i = 0; i < update.count; i++) {
+            TreeMap<Double, Long> side = update.sides[i] == DepthUpdate.BID ? bids : asks;
+            if (update.sizes[i] == 0) {
+                side.remove(update.prices[i]);
+            } else {
+                side.put(update.prices[i], update.sizes[i]);
+            }
+        }
+        sequence = update.sequence;
+    }
+
+    public List<Map.Entry<Double, Long>> getBids() {
+        return new ArrayList<>(bids.entrySet());
+    }
+
+    public List<Map.Entry<Double, Long>> getAsks() {
+        return new ArrayList<>(asks.entrySet());
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getGaps() {
+        return gaps;
+    }
+}
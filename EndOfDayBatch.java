@@ -0,0 +1,139 @@
+import java.io.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * EndOfDayBatch - Marks every account to the closing prices and produces its
+ * statement.
+ *
+ * Accounts are split into partitions that run on one worker per core; each
+ * worker stops at the window deadline, so a huge account base yields a late
+ * count instead of an unbounded batch. Closing prices are a copy taken at the
+ * close and orders are rejected while the session is closed, so the accounts
+ * do not move under the batch. Statements go to
+ * <directory>/<session date>/<user id>.txt, or stay in the report when no
+ * directory is given.
+ */
+class EndOfDayBatch {
+    static final long DEFAULT_WINDOW_MILLIS = 60 * 1000L;
+
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    private final TradingEngine engine;
+    private final Map<String, Double> closingPrices;
+    private final long sessionOpenMillis;
+    private final long sessionCloseMillis;
+    private final LocalDate sessionDate;
+    private final File directory;
+    private final long windowMillis;
+
+    EndOfDayBatch(TradingEngine engine, Map<String, Double> closingPrices, long sessionOpenMillis,
+            long sessionCloseMillis, LocalDate sessionDate, File directory, long windowMillis) {
+        this.engine = engine;
+        this.closingPrices = closingPrices;
+        this.sessionOpenMillis = sessionOpenMillis;
+        this.sessionCloseMillis = sessionCloseMillis;
+        this.sessionDate = sessionDate;
+        this.directory = directory == null ? null : new File(directory, sessionDate.format(DateTimeFormatter.ISO_LOCAL_DATE));
+        this.windowMillis = windowMillis;
+    }
+
+    EndOfDayReport run(List<User> accounts) {
+        long start = System.nanoTime();
+        long deadline = start + windowMillis * 1000000;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Error creating statement directory " + directory);
+        }
+        int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), accounts.size()));
+        int partitions = Math.max(1, Math.min(accounts.size(), workers * PARTITIONS_PER_WORKER));
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        DoubleAdder equity = new DoubleAdder();
+        List<AccountStatement> kept = directory == null ? Collections.synchronizedList(new ArrayList<>()) : null;
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "end-of-day");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                int from = (int) ((long) accounts.size() * p / partitions);
+                int to = (int) ((long) accounts.size() * (p + 1) / partitions);
+                futures.add(pool.submit(() -> {
+                    for (int i = from; i < to && System.nanoTime() < deadline; i++) {
+                        User user = accounts.get(i);
+                        try {
+                            AccountStatement statement = statementFor(user);
+                            if (kept != null) {
+                                kept.add(statement);
+                            } else {
+                                writeStatement(statement);
+                            }
+                            equity.add(statement.getEquity());
+                            completed.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            failed.incrementAndGet();
+                            System.err.println("Error producing statement for " + user.getUserId() + ": "
+                                    + e.getMessage());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                } catch (ExecutionException e) {
+                    System.err.println("Error in end-of-day batch: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return new EndOfDayReport(sessionDate, accounts.size(), completed.get(), failed.get(),
+                (System.nanoTime() - start) / 1000000, equity.sum(), kept);
+    }
+
+    AccountStatement statementFor(User user) throws IOException {
+        double cash;
+        List<AccountStatement.StatementLine> lines = new ArrayList<>();
+        synchronized (user) {
+            cash = user.getCashBalance();
+            for (PortfolioHolding holding : user.getPortfolio().getHoldings()) {
+                if (holding.getShares() == 0)
+                    continue;
+                Double close = closingPrices.get(holding.getSymbol());
+                lines.add(new AccountStatement.StatementLine(holding.getSymbol(), holding.getShares(),
+                        holding.getAverageCost(), close == null ? holding.getAverageCost() : close));
+            }
+        }
+        lines.sort(Comparator.comparing(line -> line.symbol));
+
+        int[] counts = new int[2];
+        double[] amounts = new double[2];
+        engine.scanTransactionHistory(user, sessionOpenMillis, sessionCloseMillis, tx -> {
+            int side = "BUY".equals(tx.getType()) ? 0 : 1;
+            counts[side]++;
+            amounts[side] += tx.getTotalAmount();
+        });
+        AccountState opening = engine.valueAsOf(user, sessionOpenMillis);
+        return new AccountStatement(user.getUserId(), user.getName(), sessionDate, cash, lines, counts[0],
+                counts[1], amounts[0], amounts[1], opening == null ? Double.NaN : opening.getTotalValue());
+    }
+
+    private void writeStatement(AccountStatement statement) throws IOException {
+        File target = new File(directory, statement.getUserId() + ".txt");
+        try (Writer out = new BufferedWriter(new FileWriter(target))) {
+            statement.write(out);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.time.*;
+import java.util.*;
+
+/**
+ * EndOfDayReport - Outcome of an end-of-day batch
+ */
+class EndOfDayReport {
+    private final LocalDate sessionDate;
+    private final int accounts;
+    private final int completed;
+    private final int failed;
+    private final long elapsedMillis;
+    private final double totalEquity;
+    private final List<AccountStatement> statements;
+
+    EndOfDayReport(LocalDate sessionDate, int accounts, int completed, int failed, long elapsedMillis,
+            double totalEquity, List<AccountStatement> statements) {
+        this.sessionDate = sessionDate;
+        this.accounts = accounts;
+        this.completed = completed;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+        this.totalEquity = totalEquity;
+        this.statements = statements;
+    }
+
+    public LocalDate getSessionDate() {
+        return sessionDate;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public int getCompleted() {
+        return completed;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Accounts not reached before the window closed.
+     */
+    public int getLate() {
+        return accounts - completed - failed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getTotalEquity() {
+        return totalEquity;
+    }
+
+    /**
+     * The statements, when they were not written to a directory.
+     */
+    public List<AccountStatement> getStatements() {
+        return statements;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Session %s: %d/%d statements (%d failed, %d late) in %d ms, equity $%,.2f",
+                sessionDate, completed, accounts, failed, getLate(), elapsedMillis, totalEquity);
+    }
+}
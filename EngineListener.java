@@ -0,0 +1,37 @@
+import java.util.*;
+
+/**
+ * EngineListener - Callbacks for engine state changes. Implementations must
+ * be quick and must not call back into the engine.
+ *
+ * Callbacks do not all run on the same thread or under the same lock:
+ *
+ * onTick runs on the thread that moved the prices, with tickLock held, once
+ * every shard has finished its part of the tick. Shards keep filling orders
+ * meanwhile, so onFill calls can overlap it.
+ *
+ * onFill runs on the shard thread that filled the order, holding only that
+ * account's monitor, not tickLock. Fills on different shards call it
+ * concurrently; fills of one account are serialized by its monitor.
+ *
+ * onAccountRegistered runs on the registering caller's thread with tickLock
+ * held, so it never overlaps onTick or onSessionChange.
+ *
+ * onSessionChange runs on the thread opening or closing the session (the
+ * tick thread when a schedule is set, or a replication thread on a
+ * standby) with tickLock held. On a close, every shard has already seen the
+ * closed state, so no onFill follows it until the next open.
+ */
+interface EngineListener {
+    default void onTick(Collection<Stock> stocks) {
+    }
+
+    default void onFill(User user, Transaction tx) {
+    }
+
+    default void onAccountRegistered(User user) {
+    }
+
+    default void onSessionChange(SessionState state) {
+    }
+}
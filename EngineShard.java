@@ -0,0 +1,106 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * EngineShard - One partition of the symbol universe, owned by one thread.
+ *
+ * A shard's stocks are only mutated by its own thread: ticks and orders for
+ * those symbols are queued to it and run one at a time, so shards run in
+ * parallel without locking market data. Each shard numbers the events it
+ * processes in its own journal sequence. Account cash and positions are
+ * shared between shards and guarded by the account's own lock (see
+ * TradingEngine).
+ */
+class EngineShard {
+    private final int id;
+    private final Map<String, Stock> stocks = new HashMap<>();
+    private final ThreadPoolExecutor executor;
+    private volatile Thread thread;
+
+    // Written by the shard thread only
+    private volatile long journalSequence;
+    private volatile long ordersProcessed;
+    private volatile long ticksProcessed;
+
+    EngineShard(int id) {
+        this.id = id;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "engine-shard-" + id);
+            t.setDaemon(true);
+            thread = t;
+            return t;
+        });
+    }
+
+    /**
+     * Runs an order on the shard thread and completes with its result.
+     */
+    <T> CompletableFuture<T> submitOrder(Supplier<T> order) {
+        return CompletableFuture.supplyAsync(() -> {
+            journalSequence++;
+            ordersProcessed++;
+            return order.get();
+        }, executor);
+    }
+
+    /**
+     * Simulates one price move for every stock of this shard.
+     */
+    CompletableFuture<Void> submitTick() {
+        return CompletableFuture.runAsync(() -> {
+            journalSequence++;
+            ticksProcessed++;
+            for (Stock stock : stocks.values()) {
+                stock.updatePrice();
+            }
+        }, executor);
+    }
+
+    CompletableFuture<Void> submit(Runnable task) {
+        return CompletableFuture.runAsync(() -> {
+            journalSequence++;
+            task.run();
+        }, executor);
+    }
+
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    boolean isShardThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * The shard's own stock map; only touch it from the shard thread or while
+     * the engine is quiesced.
+     */
+    Map<String, Stock> stocks() {
+        return stocks;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    public long getOrdersProcessed() {
+        return ordersProcessed;
+    }
+
+    public long getTicksProcessed() {
+        return ticksProcessed;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+}
@@ -0,0 +1,20 @@
+import java.util.*;
+
+/**
+ * EngineSnapshot - Point-in-time copy of the state persisted to the data file
+ */
+class EngineSnapshot {
+    final Map<String, Stock> stocks;
+    final User currentUser;
+    final Map<String, User> accounts;
+    final long capturedAt;
+    final long captureNanos;
+
+    EngineSnapshot(Map<String, Stock> stocks, User currentUser, Map<String, User> accounts, long captureNanos) {
+        this.stocks = stocks;
+        this.currentUser = currentUser;
+        this.accounts = accounts;
+        this.capturedAt = System.currentTimeMillis();
+        this.captureNanos = captureNanos;
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.*;
+
+/**
+ * ExportFilter - Which accounts, symbols and fill times to export; unset
+ * means everything
+ */
+class ExportFilter {
+    private Set<String> accounts;
+    private Set<String> symbols;
+    private long fromMillis = Long.MIN_VALUE;
+    private long toMillis = Long.MAX_VALUE;
+
+    ExportFilter withAccounts(Collection<String> userIds) {
+        this.accounts = new HashSet<>(userIds);
+        return this;
+    }
+
+    ExportFilter withSymbols(Collection<String> symbols) {
+        this.symbols = new HashSet<>(symbols);
+        return this;
+    }
+
+    /**
+     * Fills with timestamps in [fromMillis, toMillis].
+     */
+    ExportFilter withTimeRange(long fromMillis, long toMillis) {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        return this;
+    }
+
+    boolean includesAccount(String userId) {
+        return accounts == null || accounts.contains(userId);
+    }
+
+    boolean includesSymbol(String symbol) {
+        return symbols == null || symbols.contains(symbol);
+    }
+
+    long getFromMillis() {
+        return fromMillis;
+    }
+
+    long getToMillis() {
+        return toMillis;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * ExportFormat - Output formats of the data exporter
+ */
+enum ExportFormat {
+    CSV, COLUMNAR
+}
@@ -0,0 +1,44 @@
+/**
+ * ExportReport - What an export wrote
+ */
+class ExportReport {
+    private final int accounts;
+    private final long rows;
+    private final int files;
+    private final long bytes;
+    private final long elapsedMillis;
+
+    ExportReport(int accounts, long rows, int files, long bytes, long elapsedMillis) {
+        this.accounts = accounts;
+        this.rows = rows;
+        this.files = files;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows from %d accounts, %d files, %d KB in %d ms", rows, accounts, files,
+                bytes / 1024, elapsedMillis);
+    }
+}
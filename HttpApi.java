@@ -0,0 +1,830 @@
+import com.sun.net.httpserver.*;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JsonWriter - Streaming JSON encoder writing UTF-8 straight into a byte
+ * buffer.
+ *
+ * Numbers and ASCII strings are written without intermediate Strings; the
+ * buffer either grows (toByteArray) or drains into an output stream when
+ * full, so a writer can be reused across responses.
+ */
+final class JsonWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private final OutputStream out; // null: grow the buffer instead
+    private byte[] buffer;
+    private int count;
+    private boolean[] hasValue = new boolean[16]; // per nesting level
+    private int depth;
+    private boolean afterName;
+    private final StringBuilder scratch = new StringBuilder(32);
+
+    JsonWriter(int initialCapacity) {
+        this(null, initialCapacity);
+    }
+
+    JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(64, bufferSize)];
+    }
+
+    JsonWriter beginObject() throws IOException {
+        separate();
+        push();
+        return writeByte('{');
+    }
+
+    JsonWriter endObject() throws IOException {
+        depth--;
+        return writeByte('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        separate();
+        push();
+        return writeByte('[');
+    }
+
+    JsonWriter endArray() throws IOException {
+        depth--;
+        return writeByte(']');
+    }
+
+    JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null)
+            return writeBytes(NULL);
+        writeString(value);
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        if (value == Long.MIN_VALUE) {
+            scratch.setLength(0);
+            return writeAscii(scratch.append(value));
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int start = count;
+        do {
+            buffer[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+        return this;
+    }
+
+    /**
+     * Non-finite values are written as null.
+     */
+    JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            separate();
+            return writeBytes(NULL);
+        }
+        if (value == (long) value && Math.abs(value) < 1e15)
+            return value((long) value);
+        separate();
+        scratch.setLength(0);
+        return writeAscii(scratch.append(value));
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        separate();
+        return writeBytes(value ? TRUE : FALSE);
+    }
+
+    JsonWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    JsonWriter field(String name, double value) throws IOException {
+        return name(name).value(value);
+    }
+
+    JsonWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    /**
+     * Drains the buffer into the stream; a no-op for growing writers.
+     */
+    void flush() throws IOException {
+        if (out != null) {
+            out.write(buffer, 0, count);
+            count = 0;
+            out.flush();
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    void reset() {
+        count = 0;
+        depth = 0;
+        afterName = false;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasValue[depth]) {
+                writeByte(',');
+            }
+            hasValue[depth] = true;
+        }
+    }
+
+    private void push() {
+        if (++depth == hasValue.length) {
+            hasValue = Arrays.copyOf(hasValue, depth * 2);
+        }
+        hasValue[depth] = false;
+    }
+
+    private void writeString(String value) throws IOException {
+        int length = value.length();
+        ensure(length + 2);
+        buffer[count++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                if (count == buffer.length) {
+                    ensure(1);
+                }
+                buffer[count++] = (byte) c;
+            } else {
+                writeEscaped(value, i, c);
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeEscaped(String value, int i, char c) throws IOException {
+        ensure(6);
+        if (c == '"' || c == '\\') {
+            buffer[count++] = '\\';
+            buffer[count++] = (byte) c;
+        } else if (c < 0x20) {
+            buffer[count++] = '\\';
+            buffer[count++] = 'u';
+            buffer[count++] = '0';
+            buffer[count++] = '0';
+            buffer[count++] = HEX[c >> 4];
+            buffer[count++] = HEX[c & 0xF];
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, value.charAt(i + 1));
+            buffer[count++] = (byte) (0xF0 | (cp >> 18));
+            buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            buffer[count++] = '?'; // unpaired surrogate
+        } else {
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private JsonWriter writeAscii(CharSequence text) throws IOException {
+        int length = text.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    private JsonWriter writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+        return this;
+    }
+
+    private JsonWriter writeByte(char b) throws IOException {
+        ensure(1);
+        buffer[count++] = (byte) b;
+        return this;
+    }
+
+    private void ensure(int extra) throws IOException {
+        if (count + extra <= buffer.length)
+            return;
+        if (out != null) {
+            out.write(buffer, 0, count);
+            count = 0;
+            if (extra <= buffer.length)
+                return;
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+    }
+}
+
+/**
+ * HttpApi - Embedded read-only HTTP/JSON API over a running engine.
+ *
+ *   GET /api/status                       engine, session and API counters
+ *   GET /api/quotes                       every stock
+ *   GET /api/quotes/{symbol}              one stock
+ *   GET /api/scan/{type}?limit=n          top gainers, losers or most active
+ *   GET /api/accounts                     account ids, names and cash
+ *   GET /api/accounts/{id}[?asOf=millis]  cash, positions and P&L, or the
+ *                                         point-in-time value
+ *   GET /api/accounts/{id}/history[?from=&to=&symbol=]
+ *                                         fills, streamed
+ *
+ * Requests run on virtual threads when the JVM has them, otherwise on a
+ * bounded pool. Market responses (quotes and scans) are encoded once per
+ * tick and universe version, gzipped once for clients that accept it, and
+ * carry that version as an ETag so pollers get 304 Not Modified until the
+ * next tick. History is streamed from the archive with chunked encoding.
+ * Handlers never take the engine's tick lock, only brief account locks, so
+ * polling load does not hold up ticks or orders.
+ *
+ * There is no authentication and account views show every account's cash,
+ * positions and fills, so the API listens on the loopback interface unless
+ * the trading.http.bind property names another address.
+ */
+class HttpApi {
+    static final String PORT_PROPERTY = "trading.http.port";
+    static final String BIND_PROPERTY = "trading.http.bind";
+
+    private static final int GZIP_MIN_BYTES = 1024;
+    private static final int CONSISTENT_ENCODE_ATTEMPTS = 3;
+    private static final int FALLBACK_THREADS = 64;
+
+    private final TradingEngine engine;
+    private final HttpServer server;
+    private ExecutorService executor;
+
+    // Market responses for the current version; replaced on the first request after a tick
+    private final Map<String, CachedResponse> marketCache = new ConcurrentHashMap<>();
+    private volatile long cachedTick = -1;
+    private volatile long cachedUniverse = -1;
+    private final Map<ScanType, Ranking> deepRankings = new ConcurrentHashMap<>(); // scans past CACHED_DEPTH
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder encodes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    HttpApi(TradingEngine engine, int port) throws IOException {
+        this(engine, InetAddress.getLoopbackAddress(), port);
+    }
+
+    HttpApi(TradingEngine engine, InetAddress bindAddress, int port) throws IOException {
+        this.engine = engine;
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 1024);
+        server.createContext("/api/", this::handle);
+    }
+
+    /**
+     * Starts an API on the port in the trading.http.port system property,
+     * bound to trading.http.bind or else loopback, or returns null when no
+     * port is set.
+     */
+    static HttpApi startFromSystemProperties(TradingEngine engine) {
+        Integer port = Integer.getInteger(PORT_PROPERTY);
+        if (port == null)
+            return null;
+        String bind = System.getProperty(BIND_PROPERTY);
+        try {
+            HttpApi api = new HttpApi(engine,
+                    bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind), port);
+            api.start();
+            return api;
+        } catch (IOException e) {
+            System.err.println("Error starting HTTP API on port " + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void start() {
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * A virtual thread per request when available, else a fixed pool.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(FALLBACK_THREADS, r -> {
+                Thread thread = new Thread(r, "http-api-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Routing
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            URI uri = exchange.getRequestURI();
+            String[] path = uri.getPath().substring("/api/".length()).split("/");
+            Map<String, String> query = parseQuery(uri.getRawQuery());
+            switch (path[0]) {
+                case "status":
+                    sendJson(exchange, 200, encodeStatus());
+                    break;
+                case "quotes":
+                    if (path.length == 1) {
+                        sendMarket(exchange, "quotes", this::encodeQuotes);
+                    } else {
+                        Stock stock = engine.getStock(path[1].toUpperCase(Locale.ROOT));
+                        if (stock == null) {
+                            sendError(exchange, 404, "Unknown symbol " + path[1]);
+                        } else {
+                            sendMarket(exchange, "quote:" + stock.getSymbol(), json -> writeQuote(json, stock));
+                        }
+                    }
+                    break;
+                case "scan":
+                    handleScan(exchange, path, query);
+                    break;
+                case "accounts":
+                    handleAccounts(exchange, path, query);
+                    break;
+                default:
+                    sendError(exchange, 404, "Unknown resource " + uri.getPath());
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (IOException e) {
+            errors.increment(); // client went away
+        } catch (RuntimeException e) {
+            errors.increment();
+            System.err.println("Error serving " + exchange.getRequestURI() + ": " + e);
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleScan(HttpExchange exchange, String[] path, Map<String, String> query) throws IOException {
+        if (path.length < 2) {
+            sendError(exchange, 404, "Scan type required: " + Arrays.toString(ScanType.values()));
+            return;
+        }
+        ScanType type = ScanType.valueOf(path[1].toUpperCase(Locale.ROOT).replace('-', '_'));
+        int requested = Integer.parseInt(query.getOrDefault("limit", "25"));
+        if (requested < 0)
+            throw new IllegalArgumentException("limit must not be negative");
+        int limit = Math.min(requested, engine.getStockCount());
+        sendMarket(exchange, "scan:" + type + ":" + limit, json -> {
+            List<Stock> ranked = limit <= MarketScanner.CACHED_DEPTH ? engine.getMarketScanner().top(type, limit)
+                    : deepRanking(type);
+            json.beginArray();
+            for (int i = 0; i < Math.min(limit, ranked.size()); i++) {
+                writeQuote(json, ranked.get(i));
+            }
+            json.endArray();
+        });
+    }
+
+    /**
+     * The whole universe ranked for a scan, selected once per version. Deep
+     * scans rank under the scanner's lock, which the tick thread needs too,
+     * so pollers share one selection instead of running one each.
+     */
+    private List<Stock> deepRanking(ScanType type) {
+        long tick = engine.getTickVersion();
+        long universe = engine.getUniverseVersion();
+        return deepRankings.compute(type, (t, old) -> {
+            if (old != null && !old.isOlderThan(tick, universe))
+                return old;
+            return new Ranking(tick, universe, engine.getMarketScanner().top(type, engine.getStockCount(), null));
+        }).stocks;
+    }
+
+    private void handleAccounts(HttpExchange exchange, String[] path, Map<String, String> query)
+            throws IOException {
+        if (path.length == 1) {
+            sendJson(exchange, 200, encode(json -> {
+                json.beginArray();
+                for (User user : engine.getAccounts()) {
+                    double cash;
+                    synchronized (user) {
+                        cash = user.getCashBalance();
+                    }
+                    json.beginObject().field("id", user.getUserId()).field("name", user.getName())
+                            .field("cash", cash).endObject();
+                }
+                json.endArray();
+            }));
+            return;
+        }
+        User user = engine.getAccount(path[1]);
+        if (user == null) {
+            sendError(exchange, 404, "Unknown account " + path[1]);
+            return;
+        }
+        if (path.length > 2 && "history".equals(path[2])) {
+            streamHistory(exchange, user, query);
+        } else if (query.containsKey("asOf")) {
+            AccountState state = engine.valueAsOf(user, Long.parseLong(query.get("asOf")));
+            if (state == null) {
+                sendError(exchange, 404, "No checkpoints for " + user.getUserId());
+                return;
+            }
+            sendJson(exchange, 200, encode(json -> writeAccountState(json, state)));
+        } else {
+            sendJson(exchange, 200, encode(json -> writeAccount(json, user)));
+        }
+    }
+
+    private void streamHistory(HttpExchange exchange, User user, Map<String, String> query) throws IOException {
+        long from = query.containsKey("from") ? Long.parseLong(query.get("from")) : Long.MIN_VALUE;
+        long to = query.containsKey("to") ? Long.parseLong(query.get("to")) : Long.MAX_VALUE;
+        String symbol = query.get("symbol");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // chunked
+        if ("HEAD".equals(exchange.getRequestMethod()))
+            return;
+        JsonWriter json = new JsonWriter(exchange.getResponseBody(), 8192);
+        json.beginArray();
+        try {
+            engine.scanTransactionHistory(user, from, to, tx -> {
+                if (symbol != null && !symbol.equalsIgnoreCase(tx.getSymbol()))
+                    return;
+                try {
+                    writeTransaction(json, tx);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        json.endArray();
+        json.flush();
+    }
+
+    // Market responses, cached per version
+
+    private interface Encoder {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private static final class Ranking {
+        final long tick;
+        final long universe;
+        final List<Stock> stocks;
+
+        Ranking(long tick, long universe, List<Stock> stocks) {
+            this.tick = tick;
+            this.universe = universe;
+            this.stocks = stocks;
+        }
+
+        boolean isOlderThan(long tick, long universe) {
+            return this.universe < universe || (this.universe == universe && this.tick < tick);
+        }
+    }
+
+    private static final class CachedResponse {
+        final long tick;
+        final long universe;
+        final byte[] body;
+        final byte[] gzipped; // null when too small to be worth it
+        final boolean consistent; // false when the encode overlapped a market change; never cached
+
+        CachedResponse(long tick, long universe, byte[] body, boolean consistent) throws IOException {
+            this.tick = tick;
+            this.universe = universe;
+            this.body = body;
+            this.consistent = consistent;
+            this.gzipped = body.length >= GZIP_MIN_BYTES ? gzip(body) : null;
+        }
+
+        boolean isCurrent(long tick, long universe) {
+            return this.tick == tick && this.universe == universe;
+        }
+
+        boolean isOlderThan(long tick, long universe) {
+            return this.universe < universe || (this.universe == universe && this.tick < tick);
+        }
+    }
+
+    /**
+     * Sends a market response, encoded at most once per key and version.
+     * Quotes change in place while a tick is applied, so an encode that
+     * overlapped a market change is neither cached nor tagged, and the
+     * ETag names the version the body was encoded at.
+     */
+    private void sendMarket(HttpExchange exchange, String key, Encoder encoder) throws IOException {
+        long tick = engine.getTickVersion();
+        long universe = engine.getUniverseVersion();
+        if (tick != cachedTick || universe != cachedUniverse) {
+            synchronized (marketCache) {
+                if (universe > cachedUniverse || (universe == cachedUniverse && tick > cachedTick)) {
+                    marketCache.clear(); // drop per-symbol entries of older ticks
+                    cachedTick = tick;
+                    cachedUniverse = universe;
+                }
+            }
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Vary", "Accept-Encoding");
+        String etag = etag(tick, universe);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            headers.set("ETag", etag);
+            notModified.increment();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        CachedResponse cached = marketCache.get(key);
+        if (cached != null && cached.isCurrent(tick, universe)) {
+            cacheHits.increment();
+        } else {
+            // One encode per key and version; concurrent pollers wait for it and
+            // a request that read an older version never replaces a newer entry
+            CachedResponse[] encoded = new CachedResponse[1];
+            cached = marketCache.compute(key, (k, old) -> {
+                if (old != null && !old.isOlderThan(tick, universe))
+                    return old;
+                try {
+                    encoded[0] = encodeConsistent(encoder);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return encoded[0].consistent ? encoded[0] : old;
+            });
+            if (encoded[0] != null && !encoded[0].consistent) {
+                cached = encoded[0];
+            }
+        }
+        if (cached.consistent) {
+            headers.set("ETag", etag(cached.tick, cached.universe));
+        }
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (cached.gzipped != null && accept != null && accept.contains("gzip")) {
+            headers.set("Content-Encoding", "gzip");
+            send(exchange, 200, cached.gzipped);
+        } else {
+            send(exchange, 200, cached.body);
+        }
+    }
+
+    /**
+     * Encodes with the market holding still, retrying a few times when a
+     * change overlaps the encode; after that the last body is returned
+     * marked inconsistent.
+     */
+    private CachedResponse encodeConsistent(Encoder encoder) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            long writes = engine.getMarketWrites();
+            long tick = engine.getTickVersion();
+            long universe = engine.getUniverseVersion();
+            encodes.increment();
+            byte[] body = encode(encoder);
+            boolean consistent = writes >= 0 && engine.getMarketWrites() == writes;
+            if (consistent || attempt == CONSISTENT_ENCODE_ATTEMPTS)
+                return new CachedResponse(tick, universe, body, consistent);
+        }
+    }
+
+    private static String etag(long tick, long universe) {
+        return "\"" + tick + "-" + universe + "\"";
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes, 8192)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Encoding
+
+    private static byte[] encode(Encoder encoder) throws IOException {
+        JsonWriter json = new JsonWriter(4096);
+        encoder.write(json);
+        return json.toByteArray();
+    }
+
+    private byte[] encodeStatus() throws IOException {
+        return encode(json -> json.beginObject()
+                .field("tickVersion", engine.getTickVersion())
+                .field("universeVersion", engine.getUniverseVersion())
+                .field("session", engine.getSessionState().name())
+                .field("stocks", engine.getAllStocks().size())
+                .field("accounts", engine.getAccounts().size())
+                .field("shards", engine.getShardCount())
+                .field("startupMillis", engine.getStartupMillis())
+                .name("api").beginObject()
+                .field("requests", requests.sum())
+                .field("notModified", notModified.sum())
+                .field("cacheHits", cacheHits.sum())
+                .field("encodes", encodes.sum())
+                .field("errors", errors.sum())
+                .endObject()
+                .endObject());
+    }
+
+    private void encodeQuotes(JsonWriter json) throws IOException {
+        json.beginArray();
+        for (Stock stock : engine.getAllStocks()) {
+            writeQuote(json, stock);
+        }
+        json.endArray();
+    }
+
+    private static void writeQuote(JsonWriter json, Stock stock) throws IOException {
+        json.beginObject()
+                .field("symbol", stock.getSymbol())
+                .field("name", stock.getCompanyName())
+                .field("price", stock.getCurrentPrice())
+                .field("open", stock.getOpenPrice())
+                .field("previousClose", stock.getPreviousClose())
+                .field("change", stock.getPriceChange())
+                .field("changePercent", stock.getChangePercent())
+                .field("volume", stock.getVolume())
+                .field("marketCap", stock.getMarketCap())
+                .field("sector", stock.getSector())
+                .endObject();
+    }
+
+    private void writeAccount(JsonWriter json, User user) throws IOException {
+        double cash;
+        double realized;
+        List<PortfolioHolding> holdings = new ArrayList<>();
+        synchronized (user) {
+            cash = user.getCashBalance();
+            TaxLotLedger lots = user.getLotLedger();
+            realized = lots == null ? 0 : lots.getRealizedPnL();
+            for (PortfolioHolding holding : user.getPortfolio().getHoldings()) {
+                if (holding.getShares() != 0) {
+                    holdings.add(holding.copy());
+                }
+            }
+        }
+        double marketValue = 0;
+        double unrealized = 0;
+        json.beginObject().field("id", user.getUserId()).field("name", user.getName()).field("cash", cash);
+        json.name("positions").beginArray();
+        for (PortfolioHolding holding : holdings) {
+            double price = engine.getLastPrice(holding.getSymbol(), holding.getAverageCost());
+            double value = holding.getShares() * price;
+            double gain = value - holding.getShares() * holding.getAverageCost();
+            marketValue += value;
+            unrealized += gain;
+            json.beginObject()
+                    .field("symbol", holding.getSymbol())
+                    .field("shares", holding.getShares())
+                    .field("averageCost", holding.getAverageCost())
+                    .field("price", price)
+                    .field("marketValue", value)
+                    .field("unrealized", gain)
+                    .endObject();
+        }
+        json.endArray()
+                .field("marketValue", marketValue)
+                .field("totalValue", cash + marketValue)
+                .field("unrealized", unrealized)
+                .field("realized", realized)
+                .endObject();
+    }
+
+    private static void writeAccountState(JsonWriter json, AccountState state) throws IOException {
+        json.beginObject()
+                .field("id", state.getUserId())
+                .field("asOf", state.getAsOf())
+                .field("cash", state.getCash())
+                .name("shares").beginObject();
+        for (Map.Entry<String, Integer> entry : state.getShares().entrySet()) {
+            json.field(entry.getKey(), entry.getValue());
+        }
+        json.endObject()
+                .field("marketValue", state.getMarketValue())
+                .field("totalValue", state.getTotalValue())
+                .field("fillsReplayed", state.getFillsReplayed())
+                .endObject();
+    }
+
+    private static void writeTransaction(JsonWriter json, Transaction tx) throws IOException {
+        json.beginObject()
+                .field("id", tx.getTransactionId())
+                .field("timestamp", tx.getTimestamp().getTime())
+                .field("symbol", tx.getSymbol())
+                .field("type", tx.getType())
+                .field("shares", tx.getShares())
+                .field("price", tx.getPrice())
+                .field("amount", tx.getTotalAmount());
+        if (tx.getLotMethod() != null) {
+            json.field("lotMethod", tx.getLotMethod().name());
+        }
+        json.endObject();
+    }
+
+    // HTTP helpers
+
+    private static void sendJson(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        send(exchange, status, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            sendJson(exchange, status, encode(json -> json.beginObject().field("error", message).endObject()));
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty())
+            return Collections.emptyMap();
+        Map<String, String> query = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
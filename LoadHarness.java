@@ -0,0 +1,551 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * LoadHarness - Headless multi-trader load generator and soak test.
+ *
+ * Registers one account per simulated trader and runs each trader as its own
+ * thread (a virtual thread when the JVM has them), sending a configurable mix
+ * of buys and sells through the engine while a ticker moves prices. Runs for
+ * a fixed duration or order count and reports throughput, order latency
+ * percentiles, GC pauses, heap growth and invariant violations.
+ *
+ * Invariants are checked against an independent ledger built from the
+ * engine's fill callbacks: cash and shares never go negative, and each
+ * account's cash equals its starting cash minus buys plus sells. Finally the
+ * most widely held symbol is delisted, and every account must still value
+ * its positions as before.
+ *
+ * Usage: java LoadHarness [--traders N] [--duration SECONDS] [--orders N]
+ *            [--buy-pct P] [--max-shares N] [--hot-pct P] [--think-micros N]
+ *            [--tick-millis N] [--shards N] [--universe FILE] [--cash AMOUNT]
+ *            [--archive DIR] [--virtual | --platform]
+ */
+class LoadHarness {
+    private final Config config;
+    private final TradingEngine engine;
+    private final Path archiveDir;
+    private final boolean deleteArchive;
+    private final List<Trader> traders = new ArrayList<>();
+    private final Map<User, Trader> tradersByAccount = new ConcurrentHashMap<>();
+    private final LatencyHistogram orderLatency = new LatencyHistogram();
+    private final LatencyHistogram tickLatency = new LatencyHistogram();
+    private final AtomicLong ordersSent = new AtomicLong();
+    private final AtomicLong ordersFilled = new AtomicLong();
+    private final AtomicLong ordersRejected = new AtomicLong();
+    private final AtomicLong violations = new AtomicLong();
+    private final AtomicLong gcCount = new AtomicLong();
+    private final AtomicLong gcPauseMillis = new AtomicLong();
+    private final AtomicLong maxGcPauseMillis = new AtomicLong();
+    private final AtomicLong peakHeap = new AtomicLong();
+    private volatile boolean running = true;
+    private String[] symbols;
+    private String[] hotSymbols;
+
+    LoadHarness(Config config) throws IOException {
+        this.config = config;
+        this.deleteArchive = config.archiveDir == null;
+        this.archiveDir = deleteArchive ? Files.createTempDirectory("load-harness") : Paths.get(config.archiveDir);
+        this.engine = new TradingEngine(null, archiveDir.toString(), config.shards, config.universeFile);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: LoadHarness [--traders N] [--duration SECONDS] [--orders N] [--buy-pct P]");
+            System.err.println("           [--max-shares N] [--hot-pct P] [--think-micros N] [--tick-millis N]");
+            System.err.println("           [--shards N] [--universe FILE] [--cash AMOUNT] [--archive DIR]");
+            System.err.println("           [--virtual | --platform]");
+            System.exit(2);
+            return;
+        }
+        LoadHarness harness = new LoadHarness(config);
+        boolean clean = harness.run();
+        System.exit(clean ? 0 : 1);
+    }
+
+    /**
+     * Runs the load and prints the report; returns false when any invariant
+     * was violated.
+     */
+    public boolean run() throws Exception {
+        setUp();
+        installGcListener();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        ExecutorService traderThreads = newTraderExecutor();
+        ScheduledExecutorService background = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "load-harness");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleAtFixedRate(this::tick, 0, config.tickMillis, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        background.scheduleAtFixedRate(() -> progress(start), 1, 1, TimeUnit.SECONDS);
+
+        CountDownLatch finished = new CountDownLatch(traders.size());
+        for (Trader trader : traders) {
+            traderThreads.execute(() -> {
+                try {
+                    trader.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error in trader " + trader.account.getUserId() + ": " + e);
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        if (!finished.await(config.durationSeconds, TimeUnit.SECONDS)) {
+            running = false;
+            finished.await();
+        }
+        running = false;
+        long elapsed = System.nanoTime() - start;
+        traderThreads.shutdown();
+        background.shutdown();
+        background.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Final audit with the engine quiesced so no fill is half-applied
+        long auditViolations = engine.quiesce(this::audit) + auditDelisting();
+        engine.shutdown();
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+        report(elapsed, heapBefore, heapAfter, auditViolations);
+        if (deleteArchive) {
+            deleteRecursively(archiveDir);
+        }
+        return violations.get() + auditViolations == 0;
+    }
+
+    private void setUp() {
+        List<Stock> stocks = engine.getAllStocks();
+        stocks.sort(Comparator.comparingDouble(Stock::getMarketCap).reversed());
+        symbols = new String[stocks.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = stocks.get(i).getSymbol();
+        }
+        hotSymbols = Arrays.copyOf(symbols, Math.min(10, symbols.length));
+        for (int i = 0; i < config.traders; i++) {
+            User account = new User(String.format("LOAD%05d", i), "Load Trader " + i, config.cash);
+            engine.registerAccount(account);
+            Trader trader = new Trader(account, config.cash, new SplittableRandom(i));
+            traders.add(trader);
+            tradersByAccount.put(account, trader);
+        }
+        engine.addListener(new EngineListener() {
+            @Override
+            public void onFill(User user, Transaction tx) {
+                Trader trader = tradersByAccount.get(user);
+                if (trader != null) {
+                    trader.recordFill(tx);
+                }
+            }
+        });
+    }
+
+    /**
+     * One thread per trader: virtual threads when the runtime has them and
+     * they were not disabled, otherwise platform threads.
+     */
+    private ExecutorService newTraderExecutor() {
+        if (config.virtualThreads) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                System.out.println("Traders on virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads unavailable on Java "
+                        + System.getProperty("java.specification.version") + ", using platform threads");
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(null, r, "trader-" + count.incrementAndGet(), 256 * 1024);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void tick() {
+        if (!running)
+            return;
+        long start = System.nanoTime();
+        engine.updateMarketPrices();
+        tickLatency.record(System.nanoTime() - start);
+    }
+
+    private void installGcListener() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof NotificationEmitter))
+                continue;
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (!"com.sun.management.gc.notification".equals(notification.getType()))
+                    return;
+                CompositeData info = (CompositeData) notification.getUserData();
+                CompositeData gcInfo = (CompositeData) info.get("gcInfo");
+                String cause = String.valueOf(info.get("gcCause"));
+                if ("System.gc()".equals(cause))
+                    return; // the harness's own baseline collections
+                long duration = (Long) gcInfo.get("duration");
+                gcCount.incrementAndGet();
+                gcPauseMillis.addAndGet(duration);
+                maxGcPauseMillis.accumulateAndGet(duration, Math::max);
+            }, null, null);
+        }
+    }
+
+    private void progress(long start) {
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        peakHeap.accumulateAndGet(used, Math::max);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%5.0fs  orders %,d (%,.0f/s)  p99 %s  heap %d MB  gc %d  violations %d%n", seconds,
+                ordersSent.get(), ordersSent.get() / seconds, micros(orderLatency.percentile(0.99)),
+                used >> 20, gcCount.get(), violations.get());
+    }
+
+    /**
+     * Compares every account with the ledger built from its fills.
+     */
+    private long audit() {
+        long found = 0;
+        for (Trader trader : traders) {
+            found += trader.audit();
+        }
+        return found;
+    }
+
+    /**
+     * Delists the most widely held symbol and checks every account is still
+     * valued, at its last price, as before.
+     */
+    private long auditDelisting() {
+        Map<String, Integer> holders = new HashMap<>();
+        Map<Trader, double[]> before = new HashMap<>();
+        for (Trader trader : traders) {
+            for (PortfolioHolding holding : trader.account.getPortfolio().getHoldings()) {
+                holders.merge(holding.getSymbol(), 1, Integer::sum);
+            }
+            before.put(trader, trader.valuation());
+        }
+        if (holders.isEmpty())
+            return 0;
+        String symbol = Collections.max(holders.entrySet(), Map.Entry.comparingByValue()).getKey();
+        engine.applyUniverseChanges(Collections.singletonList(
+                new ReferenceRecord(UniverseAction.DELIST, symbol, null, 0, 0, null, 0, 0)));
+        long found = 0;
+        for (Trader trader : traders) {
+            try {
+                double[] after = trader.valuation();
+                engine.getRiskAnalytics().historicalVaR(trader.account, 0.95);
+                if (!Arrays.equals(after, before.get(trader))) {
+                    System.err.printf("Invariant violated: %s valued at %s before delisting %s, %s after%n",
+                            trader.account.getUserId(), Arrays.toString(before.get(trader)), symbol,
+                            Arrays.toString(after));
+                    found++;
+                }
+            } catch (RuntimeException e) {
+                System.err.printf("Invariant violated: %s cannot be valued after delisting %s: %s%n",
+                        trader.account.getUserId(), symbol, e);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private void report(long elapsedNanos, long heapBefore, long heapAfter, long auditViolations) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.println("=== Load harness report ===");
+        System.out.printf("traders %d, shards %d, symbols %d, %.1f s%n", traders.size(), engine.getShardCount(),
+                symbols.length, seconds);
+        System.out.printf("orders   %,d sent, %,d filled, %,d rejected, %,.0f orders/s%n", ordersSent.get(),
+                ordersFilled.get(), ordersRejected.get(), ordersSent.get() / seconds);
+        System.out.printf("latency  p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                micros(orderLatency.percentile(0.50)), micros(orderLatency.percentile(0.90)),
+                micros(orderLatency.percentile(0.99)), micros(orderLatency.percentile(0.999)),
+                micros(orderLatency.getMax()));
+        System.out.printf("ticks    %,d, p50 %s  p99 %s  max %s%n", tickLatency.getCount(),
+                micros(tickLatency.percentile(0.50)), micros(tickLatency.percentile(0.99)),
+                micros(tickLatency.getMax()));
+        System.out.printf("gc       %d collections, %d ms total, %d ms max pause%n", gcCount.get(),
+                gcPauseMillis.get(), maxGcPauseMillis.get());
+        System.out.printf("heap     %d MB before, %d MB after, %d MB peak, growth %+d MB%n", heapBefore >> 20,
+                heapAfter >> 20, Math.max(peakHeap.get(), heapAfter) >> 20, (heapAfter - heapBefore) >> 20);
+        System.out.printf("invariants  %d violations during run, %d at final audit%n", violations.get(),
+                auditViolations);
+    }
+
+    private static String micros(long nanos) {
+        return nanos < 10000000 ? String.format("%.0fus", nanos / 1e3) : String.format("%.1fms", nanos / 1e6);
+    }
+
+    private void violation(String message) {
+        if (violations.incrementAndGet() <= 20) {
+            System.err.println("Invariant violated: " + message);
+        }
+    }
+
+    private static void deleteRecursively(Path root) {
+        try (java.util.stream.Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Error removing " + root + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Trader - One simulated account and its independent fill ledger
+     */
+    private class Trader {
+        final User account;
+        final SplittableRandom random;
+        // Ledger from fill callbacks, which run under the account lock
+        double expectedCash;
+        final Map<String, Integer> expectedShares = new HashMap<>();
+
+        Trader(User account, double cash, SplittableRandom random) {
+            this.account = account;
+            this.expectedCash = cash;
+            this.random = random;
+        }
+
+        void run() {
+            while (running) {
+                long sequence = ordersSent.incrementAndGet();
+                if (config.maxOrders > 0 && sequence > config.maxOrders) {
+                    ordersSent.decrementAndGet();
+                    return;
+                }
+                String symbol = pickSymbol();
+                int shares = 1 + random.nextInt(config.maxShares);
+                boolean buy = random.nextInt(100) < config.buyPercent;
+                long start = System.nanoTime();
+                boolean filled = (buy ? engine.submitBuy(account, symbol, shares)
+                        : engine.submitSell(account, symbol, shares, LotMethod.FIFO, 0)).join();
+                orderLatency.record(System.nanoTime() - start);
+                if (filled) {
+                    ordersFilled.incrementAndGet();
+                } else {
+                    ordersRejected.incrementAndGet();
+                }
+                if (config.thinkMicros > 0) {
+                    LockSupport.parkNanos(config.thinkMicros * 1000L);
+                }
+            }
+        }
+
+        private String pickSymbol() {
+            if (random.nextInt(100) < config.hotPercent)
+                return hotSymbols[random.nextInt(hotSymbols.length)];
+            return symbols[random.nextInt(symbols.length)];
+        }
+
+        void recordFill(Transaction tx) {
+            if ("BUY".equals(tx.getType())) {
+                expectedCash -= tx.getTotalAmount();
+                expectedShares.merge(tx.getSymbol(), tx.getShares(), Integer::sum);
+            } else {
+                expectedCash += tx.getTotalAmount();
+                expectedShares.merge(tx.getSymbol(), -tx.getShares(), Integer::sum);
+            }
+            if (account.getCashBalance() < -0.005) {
+                violation(account.getUserId() + " cash is negative: " + account.getCashBalance());
+            }
+            int held = account.getPortfolio().getShares(tx.getSymbol());
+            if (held < 0) {
+                violation(account.getUserId() + " holds " + held + " " + tx.getSymbol());
+            }
+            if (held != expectedShares.get(tx.getSymbol())) {
+                violation(account.getUserId() + " holds " + held + " " + tx.getSymbol() + ", fills say "
+                        + expectedShares.get(tx.getSymbol()));
+            }
+        }
+
+        long audit() {
+            long found = 0;
+            double cash = account.getCashBalance();
+            if (Math.abs(cash - expectedCash) > 0.01 + Math.abs(expectedCash) * 1e-9) {
+                System.err.printf("Invariant violated: %s cash %.2f, fills say %.2f%n", account.getUserId(), cash,
+                        expectedCash);
+                found++;
+            }
+            for (Map.Entry<String, Integer> entry : expectedShares.entrySet()) {
+                int held = account.getPortfolio().getShares(entry.getKey());
+                if (held != entry.getValue() || held < 0) {
+                    System.err.printf("Invariant violated: %s holds %d %s, fills say %d%n", account.getUserId(),
+                            held, entry.getKey(), entry.getValue());
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        double[] valuation() {
+            Portfolio portfolio = account.getPortfolio();
+            TaxLotLedger lots = account.getLotLedger();
+            return new double[] { portfolio.getTotalValue(engine), portfolio.getTotalGainLoss(engine),
+                    lots == null ? 0 : lots.getUnrealizedPnL(engine) };
+        }
+    }
+
+    /**
+     * Config - Command line options
+     */
+    static class Config {
+        int traders = 1000;
+        long durationSeconds = 30;
+        long maxOrders;
+        int buyPercent = 55;
+        int maxShares = 20;
+        int hotPercent = 20;
+        long thinkMicros = 500;
+        long tickMillis = 100;
+        int shards = TradingEngine.defaultShardCount();
+        String universeFile = System.getProperty(TradingEngine.UNIVERSE_PROPERTY);
+        double cash = 1000000.00;
+        String archiveDir;
+        boolean virtualThreads = true;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (option.equals("--virtual")) {
+                    config.virtualThreads = true;
+                    continue;
+                }
+                if (option.equals("--platform")) {
+                    config.virtualThreads = false;
+                    continue;
+                }
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("missing value for " + option);
+                String value = args[++i];
+                try {
+                    switch (option) {
+                        case "--traders":
+                            config.traders = Integer.parseInt(value);
+                            break;
+                        case "--duration":
+                            config.durationSeconds = Long.parseLong(value);
+                            break;
+                        case "--orders":
+                            config.maxOrders = Long.parseLong(value);
+                            break;
+                        case "--buy-pct":
+                            config.buyPercent = Integer.parseInt(value);
+                            break;
+                        case "--max-shares":
+                            config.maxShares = Integer.parseInt(value);
+                            break;
+                        case "--hot-pct":
+                            config.hotPercent = Integer.parseInt(value);
+                            break;
+                        case "--think-micros":
+                            config.thinkMicros = Long.parseLong(value);
+                            break;
+                        case "--tick-millis":
+                            config.tickMillis = Long.parseLong(value);
+                            break;
+                        case "--shards":
+                            config.shards = Integer.parseInt(value);
+                            break;
+                        case "--universe":
+                            config.universeFile = value;
+                            break;
+                        case "--cash":
+                            config.cash = Double.parseDouble(value);
+                            break;
+                        case "--archive":
+                            config.archiveDir = value;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("unknown option " + option);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad value for " + option + ": " + value);
+                }
+            }
+            if (config.traders < 1 || config.maxShares < 1 || config.tickMillis < 1 || config.durationSeconds < 1)
+                throw new IllegalArgumentException("traders, max-shares, tick-millis and duration must be positive");
+            return config;
+        }
+    }
+}
+
+/**
+ * LatencyHistogram - Lock-free log-linear histogram of nanosecond latencies.
+ *
+ * Each power of two is split into 16 linear buckets, so recorded values keep
+ * about 6% precision from a nanosecond up to minutes in under 1000 counters.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Upper bound of the values in a bucket
+    private static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Value at the given quantile (e.g. 0.99), rounded up to its bucket.
+     */
+    public long percentile(double quantile) {
+        long total = count.sum();
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(valueOf(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+}
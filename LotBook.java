@@ -0,0 +1,295 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * LotBook - Open lots of a single symbol.
+ *
+ * Lots are kept in a growable ring deque of primitive columns, ordered by lot
+ * id (which is also open order). FIFO consumes from the head and LIFO from the
+ * tail; a specific lot is found by binary search on its id. Lots emptied in the
+ * middle become tombstones that are trimmed when they reach either end, and
+ * the deque is compacted once tombstones outnumber live lots, so every close
+ * is amortized O(1) apart from the specific-lot search. Share count and cost
+ * basis are maintained incrementally so P&L never walks the lots.
+ */
+class LotBook implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private transient long[] ids;
+    private transient long[] openTimes;
+    private transient long[] costs; // fixed point, see ColumnCodec
+    private transient int[] remaining;
+    private transient int head;
+    private transient int size;
+    private transient int liveLots;
+    private transient boolean shared; // columns shared with a snapshot copy
+
+    private final String symbol;
+    private transient long shares;
+    private transient double costBasis;
+    private double realizedPnL;
+
+    LotBook(String symbol) {
+        this.symbol = symbol;
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        openTimes = new long[capacity];
+        costs = new long[capacity];
+        remaining = new int[capacity];
+        head = 0;
+        size = 0;
+    }
+
+    void open(long lotId, long openTime, int lotShares, double price) {
+        unshare();
+        if (size == ids.length) {
+            resize(ids.length * 2);
+        }
+        int slot = slot(size++);
+        ids[slot] = lotId;
+        openTimes[slot] = openTime;
+        costs[slot] = ColumnCodec.toFixed(price);
+        remaining[slot] = lotShares;
+        liveLots++;
+        shares += lotShares;
+        costBasis += lotShares * ColumnCodec.fromFixed(costs[slot]);
+    }
+
+    /**
+     * Closes sharesToSell shares and returns the realized P&L. For SPECIFIC,
+     * the named lot is consumed first and any remainder falls back to FIFO.
+     * Returns NaN without changing anything if there are not enough shares or
+     * the named lot is not open.
+     */
+    double close(int sharesToSell, double price, LotMethod method, long lotId) {
+        if (sharesToSell <= 0 || sharesToSell > shares)
+            return Double.NaN;
+        unshare();
+
+        double realized = 0;
+        int left = sharesToSell;
+        if (method == LotMethod.SPECIFIC) {
+            int pos = find(lotId);
+            if (pos < 0)
+                return Double.NaN;
+            int slot = slot(pos);
+            int take = Math.min(left, remaining[slot]);
+            realized += take(slot, take, price);
+            left -= take;
+        }
+        while (left > 0) {
+            trimEnds();
+            int slot = method == LotMethod.LIFO ? slot(size - 1) : slot(0);
+            int take = Math.min(left, remaining[slot]);
+            realized += take(slot, take, price);
+            left -= take;
+        }
+        trimEnds();
+        if (size > 32 && liveLots < size / 2) {
+            resize(Math.max(16, Integer.highestOneBit(liveLots) * 4));
+        }
+        realizedPnL += realized;
+        return realized;
+    }
+
+    /**
+     * Whether close would succeed, without changing anything.
+     */
+    boolean canClose(int sharesToSell, LotMethod method, long lotId) {
+        return sharesToSell > 0 && sharesToSell <= shares && (method != LotMethod.SPECIFIC || find(lotId) >= 0);
+    }
+
+    private double take(int slot, int take, double price) {
+        double cost = ColumnCodec.fromFixed(costs[slot]);
+        remaining[slot] -= take;
+        if (remaining[slot] == 0) {
+            liveLots--;
+        }
+        shares -= take;
+        costBasis -= take * cost;
+        if (shares == 0) {
+            costBasis = 0; // drop accumulated rounding once flat
+        }
+        return take * (price - cost);
+    }
+
+    private void trimEnds() {
+        while (size > 0 && remaining[head] == 0) {
+            head = (head + 1) & (ids.length - 1);
+            size--;
+        }
+        while (size > 0 && remaining[slot(size - 1)] == 0) {
+            size--;
+        }
+        if (size == 0) {
+            head = 0;
+        }
+    }
+
+    private int find(long lotId) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long id = ids[slot(mid)];
+            if (id < lotId) {
+                lo = mid + 1;
+            } else if (id > lotId) {
+                hi = mid - 1;
+            } else {
+                return remaining[slot(mid)] > 0 ? mid : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds the deque at the given capacity, dropping tombstones.
+     */
+    private void resize(int capacity) {
+        long[] oldIds = ids;
+        long[] oldTimes = openTimes;
+        long[] oldCosts = costs;
+        int[] oldRemaining = remaining;
+        int oldHead = head;
+        int oldSize = size;
+        int oldMask = oldIds.length - 1;
+
+        allocate(Math.max(capacity, Integer.highestOneBit(Math.max(1, liveLots)) * 2));
+        for (int i = 0; i < oldSize; i++) {
+            int from = (oldHead + i) & oldMask;
+            if (oldRemaining[from] == 0)
+                continue;
+            ids[size] = oldIds[from];
+            openTimes[size] = oldTimes[from];
+            costs[size] = oldCosts[from];
+            remaining[size] = oldRemaining[from];
+            size++;
+        }
+    }
+
+    /**
+     * Copy-on-write: clones the columns before the first mutation after copy().
+     */
+    private void unshare() {
+        if (!shared)
+            return;
+        ids = ids.clone();
+        openTimes = openTimes.clone();
+        costs = costs.clone();
+        remaining = remaining.clone();
+        shared = false;
+    }
+
+    private int slot(int position) {
+        return (head + position) & (ids.length - 1);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getShares() {
+        return shares;
+    }
+
+    public double getCostBasis() {
+        return costBasis;
+    }
+
+    public double getRealizedPnL() {
+        return realizedPnL;
+    }
+
+    public double getUnrealizedPnL(double currentPrice) {
+        return shares * currentPrice - costBasis;
+    }
+
+    public int getOpenLotCount() {
+        return liveLots;
+    }
+
+    /**
+     * Up to maxLots open lots, oldest first.
+     */
+    public List<TaxLot> getOpenLots(int maxLots) {
+        List<TaxLot> lots = new ArrayList<>();
+        for (int i = 0; i < size && lots.size() < maxLots; i++) {
+            int slot = slot(i);
+            if (remaining[slot] > 0) {
+                lots.add(new TaxLot(ids[slot], openTimes[slot], remaining[slot],
+                        ColumnCodec.fromFixed(costs[slot])));
+            }
+        }
+        return lots;
+    }
+
+    /**
+     * Cheap copy for snapshots; the lot columns are shared until either side
+     * next changes.
+     */
+    LotBook copy() {
+        LotBook copy = new LotBook(symbol);
+        shared = true;
+        copy.shared = true;
+        copy.ids = ids;
+        copy.openTimes = openTimes;
+        copy.costs = costs;
+        copy.remaining = remaining;
+        copy.head = head;
+        copy.size = size;
+        copy.liveLots = liveLots;
+        copy.shares = shares;
+        copy.costBasis = costBasis;
+        copy.realizedPnL = realizedPnL;
+        return copy;
+    }
+
+    // Compact persistence: live lots only, delta-encoded varints
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        ColumnCodec.writeVarLong(out, liveLots);
+        long prevId = 0;
+        long prevTime = 0;
+        long prevCost = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            if (remaining[slot] == 0)
+                continue;
+            ColumnCodec.writeVarLong(out, ids[slot] - prevId);
+            ColumnCodec.writeSignedVarLong(out, openTimes[slot] - prevTime);
+            ColumnCodec.writeSignedVarLong(out, costs[slot] - prevCost);
+            ColumnCodec.writeVarLong(out, remaining[slot]);
+            prevId = ids[slot];
+            prevTime = openTimes[slot];
+            prevCost = costs[slot];
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = (int) ColumnCodec.readVarLong(in);
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, count)) * 2));
+        long id = 0;
+        long time = 0;
+        long cost = 0;
+        for (int i = 0; i < count; i++) {
+            id += ColumnCodec.readVarLong(in);
+            time += ColumnCodec.readSignedVarLong(in);
+            cost += ColumnCodec.readSignedVarLong(in);
+            int lotShares = (int) ColumnCodec.readVarLong(in);
+            ids[i] = id;
+            openTimes[i] = time;
+            costs[i] = cost;
+            remaining[i] = lotShares;
+            shares += lotShares;
+            costBasis += lotShares * ColumnCodec.fromFixed(cost);
+        }
+        size = count;
+        liveLots = count;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * LotMethod - How a sell picks the tax lots it closes
+ */
+enum LotMethod {
+    FIFO, LIFO, SPECIFIC
+}
@@ -0,0 +1,410 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * MarketScanner - Incrementally ranked top gainers, losers and most active.
+ *
+ * Each scan keeps a RankedIndex over every symbol: an indexed min-heap of the
+ * best CACHED_DEPTH symbols and an indexed max-heap of the rest. A tick only
+ * re-keys symbols whose version changed, each a sift of O(log n) over
+ * primitive arrays, instead of re-sorting the universe. The top of each scan
+ * is published after every tick, so plain top-k queries are a list read;
+ * filtered or deeper queries take one linear pass with a k-sized heap.
+ */
+class MarketScanner {
+    static final int CACHED_DEPTH = 100;
+
+    private static final ScanType[] TYPES = ScanType.values();
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private Stock[] stocks = new Stock[16];
+    private long[] versions = new long[16];
+    private long[] seenTick = new long[16];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount; // high-water mark
+    private final RankedIndex[] indexes = new RankedIndex[TYPES.length];
+    private volatile List<List<Stock>> published;
+    private long ticks;
+
+    MarketScanner() {
+        List<List<Stock>> empty = new ArrayList<>();
+        for (ScanType type : TYPES) {
+            indexes[type.ordinal()] = new RankedIndex(CACHED_DEPTH);
+            empty.add(Collections.emptyList());
+        }
+        published = empty;
+    }
+
+    /**
+     * Re-ranks the stocks that changed since the last tick; symbols missing
+     * from the tick are dropped.
+     */
+    public synchronized void onTick(Collection<Stock> universe) {
+        ticks++;
+        int seen = 0;
+        for (Stock stock : universe) {
+            Integer slot = slots.get(stock.getSymbol());
+            if (slot == null) {
+                slot = allocate(stock);
+                slots.put(stock.getSymbol(), slot);
+                for (ScanType type : TYPES) {
+                    indexes[type.ordinal()].add(slot, type.key(stock));
+                }
+            } else if (stocks[slot] != stock || versions[slot] != stock.getVersion()) {
+                stocks[slot] = stock; // replaced by a restore or reference-data change
+                versions[slot] = stock.getVersion();
+                for (ScanType type : TYPES) {
+                    indexes[type.ordinal()].update(slot, type.key(stock));
+                }
+            }
+            seenTick[slot] = ticks;
+            seen++;
+        }
+        if (seen != slots.size()) {
+            Iterator<Integer> it = slots.values().iterator();
+            while (it.hasNext()) {
+                int slot = it.next();
+                if (seenTick[slot] != ticks) {
+                    for (RankedIndex index : indexes) {
+                        index.remove(slot);
+                    }
+                    stocks[slot] = null;
+                    freeSlots[freeCount++] = slot;
+                    it.remove();
+                }
+            }
+        }
+        publish();
+    }
+
+    private int allocate(Stock stock) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot == stocks.length) {
+                int capacity = stocks.length * 2;
+                stocks = Arrays.copyOf(stocks, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+                seenTick = Arrays.copyOf(seenTick, capacity);
+                freeSlots = Arrays.copyOf(freeSlots, capacity);
+            }
+        }
+        stocks[slot] = stock;
+        versions[slot] = stock.getVersion();
+        return slot;
+    }
+
+    private void publish() {
+        List<List<Stock>> tops = new ArrayList<>(TYPES.length);
+        for (RankedIndex index : indexes) {
+            int[] ranked = index.top();
+            List<Stock> list = new ArrayList<>(ranked.length);
+            for (int slot : ranked) {
+                list.add(stocks[slot]);
+            }
+            tops.add(Collections.unmodifiableList(list));
+        }
+        published = tops;
+    }
+
+    /**
+     * The k best-ranked stocks for the scan, as of the last tick.
+     */
+    public List<Stock> top(ScanType type, int k) {
+        List<Stock> cached = published.get(type.ordinal());
+        if (k <= CACHED_DEPTH)
+            return cached.size() <= k ? cached : cached.subList(0, k);
+        return top(type, k, null);
+    }
+
+    /**
+     * The k best-ranked stocks that pass the filter, selected in one pass
+     * over the universe with a k-sized heap.
+     */
+    public synchronized List<Stock> top(ScanType type, int k, Predicate<Stock> filter) {
+        RankedIndex index = indexes[type.ordinal()];
+        int[] heap = new int[Math.max(1, k)];
+        int size = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            Stock stock = stocks[slot];
+            if (stock == null || (filter != null && !filter.test(stock)))
+                continue;
+            if (size < k) {
+                heap[size] = slot;
+                index.siftUpWorst(heap, size++);
+            } else if (k > 0 && index.better(slot, heap[0])) {
+                heap[0] = slot;
+                index.siftDownWorst(heap, size);
+            }
+        }
+        int[] ranked = Arrays.copyOf(heap, size);
+        index.sortBestFirst(ranked);
+        List<Stock> result = new ArrayList<>(size);
+        for (int slot : ranked) {
+            result.add(stocks[slot]);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    // Common filters
+
+    static Predicate<Stock> priceBetween(double min, double max) {
+        return stock -> stock.getCurrentPrice() >= min && stock.getCurrentPrice() <= max;
+    }
+
+    static Predicate<Stock> minVolume(long volume) {
+        return stock -> stock.getVolume() >= volume;
+    }
+
+    static Predicate<Stock> minMarketCap(double marketCap) {
+        return stock -> stock.getMarketCap() >= marketCap;
+    }
+}
+
+/**
+ * RankedIndex - Indexed top-k over integer slots with mutable keys.
+ *
+ * The best `depth` slots sit in a min-heap (worst of the leaders at the root)
+ * and all others in a max-heap (best of the rest at the root). A position
+ * array makes every slot addressable, so a key change is a sift in place; the
+ * two roots are then swapped while the rest beats the leaders. Ties rank the
+ * lower slot first.
+ */
+final class RankedIndex {
+    private final int depth;
+    private double[] keys = new double[16];
+    private int[] position = new int[16]; // >= 0 in top, < 0 in rest as ~index
+    private int[] top;
+    private int topSize;
+    private int[] rest = new int[16];
+    private int restSize;
+
+    RankedIndex(int depth) {
+        this.depth = depth;
+        this.top = new int[depth];
+    }
+
+    void add(int slot, double key) {
+        if (slot >= keys.length) {
+            int capacity = Math.max(slot + 1, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            position = Arrays.copyOf(position, capacity);
+        }
+        keys[slot] = key;
+        if (restSize == rest.length) {
+            rest = Arrays.copyOf(rest, rest.length * 2);
+        }
+        rest[restSize] = slot;
+        position[slot] = ~restSize;
+        siftUpRest(restSize++);
+        rebalance();
+    }
+
+    void update(int slot, double key) {
+        double old = keys[slot];
+        keys[slot] = key;
+        int at = position[slot];
+        if (at >= 0) {
+            if (key < old) {
+                siftUpTop(at); // worse leaders move toward the root
+            } else {
+                siftDownTop(at);
+            }
+        } else if (key > old) {
+            siftUpRest(~at);
+        } else {
+            siftDownRest(~at);
+        }
+        rebalance();
+    }
+
+    void remove(int slot) {
+        int at = position[slot];
+        if (at >= 0) {
+            int last = top[--topSize];
+            if (at < topSize) {
+                top[at] = last;
+                position[last] = at;
+                siftUpTop(at);
+                siftDownTop(position[last]);
+            }
+        } else {
+            at = ~at;
+            int last = rest[--restSize];
+            if (at < restSize) {
+                rest[at] = last;
+                position[last] = ~at;
+                siftUpRest(at);
+                siftDownRest(~position[last]);
+            }
+        }
+        rebalance();
+    }
+
+    /**
+     * The leaders, best first.
+     */
+    int[] top() {
+        int[] ranked = Arrays.copyOf(top, topSize);
+        sortBestFirst(ranked);
+        return ranked;
+    }
+
+    boolean better(int a, int b) {
+        return keys[a] > keys[b] || (keys[a] == keys[b] && a < b);
+    }
+
+    private void rebalance() {
+        while (restSize > 0 && topSize < depth) {
+            int slot = popRest();
+            top[topSize] = slot;
+            position[slot] = topSize;
+            siftUpTop(topSize++);
+        }
+        while (restSize > 0 && topSize > 0 && better(rest[0], top[0])) {
+            int promoted = rest[0];
+            int demoted = top[0];
+            top[0] = promoted;
+            position[promoted] = 0;
+            rest[0] = demoted;
+            position[demoted] = ~0;
+            siftDownTop(0);
+            siftDownRest(0);
+        }
+    }
+
+    private int popRest() {
+        int slot = rest[0];
+        int last = rest[--restSize];
+        if (restSize > 0) {
+            rest[0] = last;
+            position[last] = ~0;
+            siftDownRest(0);
+        }
+        return slot;
+    }
+
+    // Leaders: min-heap, the worst leader at the root
+
+    private void siftUpTop(int i) {
+        int slot = top[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(top[parent], slot))
+                break;
+            top[i] = top[parent];
+            position[top[i]] = i;
+            i = parent;
+        }
+        top[i] = slot;
+        position[slot] = i;
+    }
+
+    private void siftDownTop(int i) {
+        int slot = top[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= topSize)
+                break;
+            if (child + 1 < topSize && better(top[child], top[child + 1])) {
+                child++;
+            }
+            if (!better(slot, top[child]))
+                break;
+            top[i] = top[child];
+            position[top[i]] = i;
+            i = child;
+        }
+        top[i] = slot;
+        position[slot] = i;
+    }
+
+    // Rest: max-heap, the best outsider at the root
+
+    private void siftUpRest(int i) {
+        int slot = rest[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(slot, rest[parent]))
+                break;
+            rest[i] = rest[parent];
+            position[rest[i]] = ~i;
+            i = parent;
+        }
+        rest[i] = slot;
+        position[slot] = ~i;
+    }
+
+    private void siftDownRest(int i) {
+        int slot = rest[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= restSize)
+                break;
+            if (child + 1 < restSize && better(rest[child + 1], rest[child])) {
+                child++;
+            }
+            if (!better(rest[child], slot))
+                break;
+            rest[i] = rest[child];
+            position[rest[i]] = ~i;
+            i = child;
+        }
+        rest[i] = slot;
+        position[slot] = ~i;
+    }
+
+    // Worst-at-root heap over a caller's array, for one-off filtered queries
+
+    void siftUpWorst(int[] heap, int i) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(heap[parent], slot))
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = slot;
+    }
+
+    void siftDownWorst(int[] heap, int size) {
+        int i = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && better(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!better(slot, heap[child]))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
+    }
+
+    /**
+     * Insertion sort; only used on top-k sized arrays.
+     */
+    void sortBestFirst(int[] slots) {
+        for (int i = 1; i < slots.length; i++) {
+            int v = slots[i];
+            int j = i - 1;
+            while (j >= 0 && better(v, slots[j])) {
+                slots[j + 1] = slots[j];
+                j--;
+            }
+            slots[j + 1] = v;
+        }
+    }
+}
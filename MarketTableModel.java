@@ -0,0 +1,406 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.*;
+
+/**
+ * MarketTableModel - Table model that reads straight from engine state.
+ *
+ * JTable only asks for the cells it paints, so formatting is done lazily in
+ * getValueAt and cached per stock, keyed by the stock's version. A tick only
+ * reformats the visible rows that actually changed. Sorting and filtering run
+ * here over an index array instead of inside a RowSorter. In a scanner view
+ * the rows are the top of a MarketScanner ranking, re-read every tick.
+ */
+class MarketTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final String[] COLUMNS = { "Symbol", "Company", "Price", "Change", "Change %", "Volume",
+            "Market Cap" };
+    private static final int FORMATTED_COLUMNS = 5; // Price .. Market Cap
+
+    private final TradingEngine engine;
+    private final StringBuilder scratch = new StringBuilder(32);
+
+    private Stock[] universe = new Stock[0];
+    private String[] lowerSymbols = new String[0];
+    private String[] lowerNames = new String[0];
+    private Map<String, Integer> indexBySymbol = new HashMap<>();
+    private long universeVersion = -1;
+
+    private String[][] cells = new String[0][];
+    private long[] cachedVersion = new long[0];
+
+    private int[] view = new int[0];
+    private int viewSize;
+    private int[] rowByIndex = new int[0]; // view row of each universe index, -1 when not shown
+    private int[] sortBuffer = new int[0];
+    private double[] sortKeys = new double[0];
+
+    private String filter = "";
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private ScanType scan;
+    private int scanLimit;
+
+    MarketTableModel(TradingEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Re-reads engine state after a tick. Rows are re-filtered when the
+     * universe or filter changed and re-sorted when a sort is active.
+     */
+    public void refresh() {
+        boolean structureChanged = false;
+        if (engine.getUniverseVersion() != universeVersion) {
+            loadUniverse();
+            applyFilter();
+            structureChanged = true;
+        } else if (scan != null) {
+            applyFilter(); // rankings move every tick
+            structureChanged = true;
+        }
+        // Symbol and company order cannot change between ticks, numeric order can
+        if (sortColumn >= 0 && (structureChanged || sortColumn >= 2)) {
+            sortView();
+            structureChanged = true;
+        }
+
+        if (structureChanged) {
+            fireTableDataChanged();
+        } else if (viewSize > 0) {
+            fireTableRowsUpdated(0, viewSize - 1);
+        }
+    }
+
+    public void setFilter(String text) {
+        String lower = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        if (lower.equals(filter))
+            return;
+        filter = lower;
+        applyFilter();
+        if (sortColumn >= 0) {
+            sortView();
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Shows the top rows of a scanner ranking, or the whole universe when
+     * the scan is null. Choosing a scan drops any column sort so rows appear
+     * in rank order.
+     */
+    public void setScan(ScanType type, int limit) {
+        scan = type;
+        scanLimit = limit;
+        if (type != null) {
+            sortColumn = -1;
+        }
+        applyFilter();
+        if (sortColumn >= 0) {
+            sortView();
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Sorts by the given column; selecting the current sort column again
+     * reverses the order.
+     */
+    public void toggleSort(int column) {
+        if (column == sortColumn) {
+            ascending = !ascending;
+        } else {
+            sortColumn = column;
+            ascending = column <= 1;
+        }
+        sortView();
+        fireTableDataChanged();
+    }
+
+    public int rowOf(String symbol) {
+        Integer index = indexBySymbol.get(symbol);
+        return index == null ? -1 : rowByIndex[index];
+    }
+
+    public Stock getStockAt(int row) {
+        return universe[view[row]];
+    }
+
+    @Override
+    public int getRowCount() {
+        return viewSize;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = view[row];
+        Stock stock = universe[index];
+        if (column == 0)
+            return stock.getSymbol();
+        if (column == 1)
+            return stock.getCompanyName();
+
+        // Versions start at 0, so the cache stores version + 1 and 0 means empty
+        long version = stock.getVersion() + 1;
+        String[] rowCells = cells[index];
+        if (cachedVersion[index] != version) {
+            if (rowCells == null) {
+                rowCells = new String[FORMATTED_COLUMNS];
+                cells[index] = rowCells;
+            }
+            rowCells[0] = format(MarketFormat.money(scratch, stock.getCurrentPrice()));
+            rowCells[1] = format(MarketFormat.money(scratch, stock.getPriceChange()));
+            rowCells[2] = format(MarketFormat.percent(scratch, stock.getChangePercent()));
+            rowCells[3] = format(MarketFormat.volume(scratch, stock.getVolume()));
+            rowCells[4] = format(MarketFormat.marketCap(scratch, stock.getMarketCap()));
+            cachedVersion[index] = version;
+        }
+        return rowCells[column - 2];
+    }
+
+    private String format(StringBuilder sb) {
+        String text = sb.toString();
+        sb.setLength(0);
+        return text;
+    }
+
+    private void loadUniverse() {
+        universeVersion = engine.getUniverseVersion();
+        List<Stock> stocks = engine.getAllStocks();
+        stocks.sort(Comparator.comparing(Stock::getSymbol));
+        int n = stocks.size();
+        universe = stocks.toArray(new Stock[n]);
+        lowerSymbols = new String[n];
+        lowerNames = new String[n];
+        indexBySymbol = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            lowerSymbols[i] = universe[i].getSymbol().toLowerCase(Locale.ROOT);
+            lowerNames[i] = universe[i].getCompanyName().toLowerCase(Locale.ROOT);
+            indexBySymbol.put(universe[i].getSymbol(), i);
+        }
+        cells = new String[n][];
+        cachedVersion = new long[n];
+        view = new int[n];
+        viewSize = 0;
+        rowByIndex = new int[n];
+        Arrays.fill(rowByIndex, -1);
+        sortBuffer = new int[n];
+        sortKeys = new double[n];
+    }
+
+    private void applyFilter() {
+        for (int row = 0; row < viewSize; row++) {
+            rowByIndex[view[row]] = -1;
+        }
+        if (view.length != universe.length) {
+            view = new int[universe.length];
+        }
+        viewSize = 0;
+        if (scan != null) {
+            applyScan();
+        } else {
+            for (int i = 0; i < universe.length; i++) {
+                if (matchesFilter(i)) {
+                    view[viewSize++] = i;
+                }
+            }
+        }
+        indexRows();
+    }
+
+    private void indexRows() {
+        for (int row = 0; row < viewSize; row++) {
+            rowByIndex[view[row]] = row;
+        }
+    }
+
+    private void applyScan() {
+        MarketScanner scanner = engine.getMarketScanner();
+        List<Stock> ranked = filter.isEmpty() ? scanner.top(scan, scanLimit)
+                : scanner.top(scan, scanLimit, stock -> {
+                    Integer index = indexBySymbol.get(stock.getSymbol());
+                    return index != null && matchesFilter(index);
+                });
+        for (Stock stock : ranked) {
+            Integer index = indexBySymbol.get(stock.getSymbol());
+            // Skip symbols listed after the universe was last loaded
+            if (index != null && universe[index] == stock) {
+                view[viewSize++] = index;
+            }
+        }
+    }
+
+    private boolean matchesFilter(int i) {
+        return filter.isEmpty() || lowerSymbols[i].contains(filter) || lowerNames[i].contains(filter);
+    }
+
+    private void sortView() {
+        IntComparator comparator;
+        if (sortColumn == 0) {
+            comparator = (a, b) -> universe[a].getSymbol().compareTo(universe[b].getSymbol());
+        } else if (sortColumn == 1) {
+            comparator = (a, b) -> universe[a].getCompanyName().compareTo(universe[b].getCompanyName());
+        } else {
+            for (int i = 0; i < viewSize; i++) {
+                sortKeys[view[i]] = numericKey(universe[view[i]]);
+            }
+            comparator = (a, b) -> Double.compare(sortKeys[a], sortKeys[b]);
+        }
+        if (!ascending) {
+            IntComparator forward = comparator;
+            comparator = (a, b) -> forward.compare(b, a);
+        }
+        mergeSort(view, sortBuffer, 0, viewSize, comparator);
+        indexRows();
+    }
+
+    private double numericKey(Stock stock) {
+        switch (sortColumn) {
+            case 2:
+                return stock.getCurrentPrice();
+            case 3:
+                return stock.getPriceChange();
+            case 4:
+                return stock.getChangePercent();
+            case 5:
+                return stock.getVolume();
+            default:
+                return stock.getMarketCap();
+        }
+    }
+
+    /**
+     * Stable merge sort over primitive indices, so no boxing per comparison.
+     */
+    private static void mergeSort(int[] a, int[] tmp, int from, int to, IntComparator cmp) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= from && cmp.compare(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid, cmp);
+        mergeSort(a, tmp, mid, to, cmp);
+        if (cmp.compare(a[mid - 1], a[mid]) <= 0)
+            return;
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && cmp.compare(tmp[i], tmp[j]) <= 0)) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+
+    interface IntComparator {
+        int compare(int a, int b);
+    }
+}
+
+/**
+ * MarketFormat - Allocation-free number formatting for market cells.
+ *
+ * Output matches the DecimalFormat/String.format patterns used elsewhere in the
+ * UI ("$#,##0.00", "+0.00%;-0.00%", "%.2fM", ...), appended to a caller-owned
+ * StringBuilder.
+ */
+final class MarketFormat {
+    private MarketFormat() {
+    }
+
+    static StringBuilder money(StringBuilder sb, double value) {
+        long cents = Math.round(Math.abs(value) * 100);
+        if (value < 0) {
+            sb.append('-');
+        }
+        sb.append('$');
+        appendGrouped(sb, cents / 100);
+        return appendFraction(sb, cents % 100);
+    }
+
+    static StringBuilder percent(StringBuilder sb, double fraction) {
+        long hundredths = Math.round(Math.abs(fraction) * 10000);
+        sb.append(fraction < 0 ? '-' : '+');
+        sb.append(hundredths / 100);
+        return appendFraction(sb, hundredths % 100).append('%');
+    }
+
+    static StringBuilder volume(StringBuilder sb, long volume) {
+        // Integer rounding keeps String.format's HALF_UP on the exact value
+        if (volume >= 1000000) {
+            long hundredths = (volume + 5000) / 10000;
+            sb.append(hundredths / 100);
+            return appendFraction(sb, hundredths % 100).append('M');
+        } else if (volume >= 1000) {
+            long hundredths = (volume + 5) / 10;
+            sb.append(hundredths / 100);
+            return appendFraction(sb, hundredths % 100).append('K');
+        }
+        return sb.append(volume);
+    }
+
+    static StringBuilder marketCap(StringBuilder sb, double marketCap) {
+        if (marketCap >= 1000000000) {
+            return fixed2(sb.append('$'), marketCap / 1000000000.0).append('B');
+        } else if (marketCap >= 1000000) {
+            return fixed2(sb.append('$'), marketCap / 1000000.0).append('M');
+        }
+        return money(sb, marketCap);
+    }
+
+    private static StringBuilder fixed2(StringBuilder sb, double value) {
+        long hundredths = Math.round(value * 100);
+        sb.append(hundredths / 100);
+        return appendFraction(sb, hundredths % 100);
+    }
+
+    private static StringBuilder appendFraction(StringBuilder sb, long hundredths) {
+        sb.append('.');
+        if (hundredths < 10) {
+            sb.append('0');
+        }
+        return sb.append(hundredths);
+    }
+
+    private static void appendGrouped(StringBuilder sb, long value) {
+        if (value < 1000) {
+            sb.append(value);
+            return;
+        }
+        appendGrouped(sb, value / 1000);
+        long group = value % 1000;
+        sb.append(',');
+        if (group < 100) {
+            sb.append('0');
+        }
+        if (group < 10) {
+            sb.append('0');
+        }
+        sb.append(group);
+    }
+}
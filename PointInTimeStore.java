@@ -0,0 +1,546 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * PointInTimeStore - Checkpoints and price history for "as of" queries.
+ *
+ * Each account gets a checkpoint when it is first tracked and then every
+ * checkpoint interval; prices are sampled at most once per sample interval
+ * per symbol. To answer "as of t" the store starts from the checkpoint
+ * nearest to t and replays the fills between them from the transaction
+ * history, forwards or (undoing them) backwards, so the tail is short on
+ * either side. Data older than the retention period is pruned, keeping at
+ * least one checkpoint per account as the anchor for older queries.
+ *
+ * Price samples live in fixed-size chunks; full chunks are never modified,
+ * so copy() for persistence shares them and only copies the open chunks.
+ *
+ * A checkpoint round skips accounts with no fill since their last
+ * checkpoint. Once journaling is on, each new checkpoint and price sample is
+ * also queued, and persist() appends the queue to a journal next to the
+ * store file instead of rewriting the store. The store file is rewritten
+ * (compacted) when the journal outgrows it or tracking changed the
+ * timelines, and load() replays the journal over it.
+ */
+class PointInTimeStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 5 * 60 * 1000L;
+    static final long DEFAULT_PRICE_SAMPLE_MILLIS = 10 * 1000L;
+    static final long DEFAULT_RETENTION_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    private final Map<String, AccountTimeline> accounts = new ConcurrentHashMap<>();
+    private final Map<String, PriceSeries> prices = new ConcurrentHashMap<>();
+    private long checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL_MILLIS;
+    private long priceSampleMillis = DEFAULT_PRICE_SAMPLE_MILLIS;
+    private long retentionMillis = DEFAULT_RETENTION_MILLIS;
+    private transient long lastCheckpointMillis;
+    private transient Queue<JournalEntry> journal = new ConcurrentLinkedQueue<>();
+    private transient volatile boolean journaling;
+    private transient volatile boolean compactionDue = true;
+
+    /**
+     * Source of an account's fills in [from, to], oldest first.
+     */
+    interface FillHistory {
+        void scan(User user, long fromMillis, long toMillis, Consumer<Transaction> action) throws IOException;
+    }
+
+    /**
+     * Starts tracking an account and checkpoints its current state. An
+     * account already tracked (e.g. loaded from disk) is resynchronized with
+     * its fill history, dropping checkpoints that history does not reach.
+     */
+    void track(User user) {
+        synchronized (user) {
+            List<Transaction> history = user.getTransactionHistory();
+            long lastFillTime = Long.MIN_VALUE;
+            int fillsAtLastTime = 0;
+            for (int i = history.size() - 1; i >= 0; i--) {
+                long time = history.get(i).getTimestamp().getTime();
+                if (fillsAtLastTime > 0 && time != lastFillTime)
+                    break;
+                lastFillTime = time;
+                fillsAtLastTime++;
+            }
+            accounts.computeIfAbsent(user.getUserId(), id -> new AccountTimeline())
+                    .resync(user, lastFillTime, fillsAtLastTime, retentionMillis);
+        }
+        compactionDue = true; // resync may drop checkpoints, which the journal cannot express
+    }
+
+    boolean isTracked(User user) {
+        return accounts.containsKey(user.getUserId());
+    }
+
+    /**
+     * Records a fill; called with the account lock held.
+     */
+    void onFill(User user, Transaction tx) {
+        AccountTimeline timeline = accounts.get(user.getUserId());
+        if (timeline != null) {
+            timeline.onFill(tx.getTimestamp().getTime());
+        }
+    }
+
+    /**
+     * Samples prices and, once per checkpoint interval, checkpoints every
+     * tracked account that traded since its last checkpoint. Returns true
+     * when a checkpoint round ran.
+     */
+    boolean onTick(Collection<Stock> stocks, Collection<User> users, long now) {
+        for (Stock stock : stocks) {
+            double price = stock.getCurrentPrice();
+            if (prices.computeIfAbsent(stock.getSymbol(), s -> new PriceSeries())
+                    .sample(now, price, priceSampleMillis, retentionMillis) && journaling) {
+                journal.add(new JournalEntry(stock.getSymbol(), now, price, null));
+            }
+        }
+        if (now - lastCheckpointMillis < checkpointIntervalMillis)
+            return false;
+        lastCheckpointMillis = now;
+        for (User user : users) {
+            AccountTimeline timeline = accounts.get(user.getUserId());
+            if (timeline == null || !timeline.hasFillsSinceCheckpoint())
+                continue;
+            AccountCheckpoint checkpoint;
+            synchronized (user) {
+                checkpoint = timeline.checkpoint(user, retentionMillis);
+            }
+            if (journaling) {
+                journal.add(new JournalEntry(user.getUserId(), 0, 0, checkpoint));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reconstructs an account as of the given time, or null if the account
+     * is not tracked.
+     */
+    AccountState reconstruct(User user, long asOf, FillHistory history, TradingEngine engine) throws IOException {
+        AccountTimeline timeline = accounts.get(user.getUserId());
+        if (timeline == null)
+            return null;
+        AccountCheckpoint checkpoint = timeline.nearest(asOf);
+        AccountState state = new AccountState(user.getUserId(), asOf, checkpoint);
+        long anchor = checkpoint.lastFillTime;
+        int[] skip = { checkpoint.fillsAtLastTime };
+        if (asOf >= checkpoint.timestamp) {
+            // Forward: fills after the checkpoint up to asOf
+            history.scan(user, anchor, asOf, tx -> {
+                if (tx.getTimestamp().getTime() == anchor && skip[0] > 0) {
+                    skip[0]--;
+                    return;
+                }
+                state.apply(tx, 1);
+            });
+        } else if (asOf < anchor) {
+            // Backward: undo fills after asOf that the checkpoint includes
+            history.scan(user, asOf + 1, anchor, tx -> {
+                if (tx.getTimestamp().getTime() < anchor) {
+                    state.apply(tx, -1);
+                } else if (skip[0] > 0) {
+                    skip[0]--;
+                    state.apply(tx, -1);
+                }
+            });
+        }
+        state.markToMarket(this, engine);
+        return state;
+    }
+
+    /**
+     * The last sampled price at or before the time, falling back to the
+     * oldest sample and then to the last listed price.
+     */
+    double priceAt(String symbol, long time, TradingEngine engine) {
+        PriceSeries series = prices.get(symbol);
+        double price = series == null ? Double.NaN : series.priceAt(time);
+        if (Double.isNaN(price)) {
+            price = engine.getLastPrice(symbol, 0);
+        }
+        return price;
+    }
+
+    /**
+     * Copy for persistence; shares full price chunks with this store.
+     */
+    PointInTimeStore copy() {
+        PointInTimeStore copy = new PointInTimeStore();
+        copy.checkpointIntervalMillis = checkpointIntervalMillis;
+        copy.priceSampleMillis = priceSampleMillis;
+        copy.retentionMillis = retentionMillis;
+        for (Map.Entry<String, AccountTimeline> entry : accounts.entrySet()) {
+            copy.accounts.put(entry.getKey(), entry.getValue().copy());
+        }
+        for (Map.Entry<String, PriceSeries> entry : prices.entrySet()) {
+            copy.prices.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Queue new checkpoints and samples for persist() from now on.
+     */
+    void setJournaling(boolean journaling) {
+        this.journaling = journaling;
+        if (!journaling) {
+            journal.clear();
+        }
+    }
+
+    /**
+     * Brings the file up to date: appends what was queued since the last
+     * call to the journal, or rewrites the store file and empties the journal
+     * when that is due. Runs off the tick thread; callers must not persist
+     * concurrently.
+     */
+    void persist(File file) throws IOException {
+        File log = journalFile(file);
+        if (compactionDue || !file.exists() || log.length() > file.length()) {
+            compactionDue = false;
+            journal.clear(); // entries queued from here on may be in the copy too; replay skips them
+            copy().save(file);
+            Files.deleteIfExists(log.toPath());
+            return;
+        }
+        if (journal.isEmpty())
+            return;
+        try (FileOutputStream fos = new FileOutputStream(log, true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 65536))) {
+            JournalEntry entry;
+            while ((entry = journal.poll()) != null) {
+                entry.write(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            compactionDue = true; // the journal may end in a torn entry; start over from a full store
+            throw e;
+        }
+    }
+
+    static File journalFile(File file) {
+        return new File(file.getPath() + ".log");
+    }
+
+    /**
+     * Writes the store to a temp file and moves it into place.
+     */
+    void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+                ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos, 65536))) {
+            oos.writeObject(this);
+            oos.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the store file and replays its journal; a torn last entry, left
+     * by a crash during an append, is ignored.
+     */
+    static PointInTimeStore load(File file) throws IOException {
+        PointInTimeStore store;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            store = (PointInTimeStore) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        File log = journalFile(file);
+        if (log.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log), 65536))) {
+                while (true) {
+                    store.replay(JournalEntry.read(in));
+                }
+            } catch (EOFException e) {
+                // end of the journal
+            }
+        }
+        return store;
+    }
+
+    private void replay(JournalEntry entry) {
+        if (entry.checkpoint != null) {
+            accounts.computeIfAbsent(entry.key, id -> new AccountTimeline()).replay(entry.checkpoint,
+                    retentionMillis);
+        } else {
+            prices.computeIfAbsent(entry.key, s -> new PriceSeries()).sample(entry.time, entry.price,
+                    priceSampleMillis, retentionMillis);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        journal = new ConcurrentLinkedQueue<>();
+        compactionDue = true;
+    }
+
+    public void setCheckpointInterval(long millis) {
+        this.checkpointIntervalMillis = millis;
+    }
+
+    public void setPriceSampleInterval(long millis) {
+        this.priceSampleMillis = millis;
+    }
+
+    public void setRetention(long millis) {
+        this.retentionMillis = millis;
+    }
+
+    public int getCheckpointCount(String userId) {
+        AccountTimeline timeline = accounts.get(userId);
+        return timeline == null ? 0 : timeline.size();
+    }
+
+    /**
+     * AccountTimeline - One account's checkpoints, oldest first
+     */
+    private static class AccountTimeline implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<AccountCheckpoint> checkpoints = new ArrayList<>();
+        private long lastFillTime = Long.MIN_VALUE;
+        private int fillsAtLastTime;
+
+        synchronized void onFill(long time) {
+            if (time == lastFillTime) {
+                fillsAtLastTime++;
+            } else {
+                lastFillTime = time;
+                fillsAtLastTime = 1;
+            }
+        }
+
+        /**
+         * Checkpoints the account; called with the account lock held, so the
+         * timestamp is not earlier than any fill it includes.
+         */
+        synchronized AccountCheckpoint checkpoint(User user, long retentionMillis) {
+            AccountCheckpoint checkpoint = new AccountCheckpoint(System.currentTimeMillis(), user, lastFillTime,
+                    fillsAtLastTime);
+            add(checkpoint, retentionMillis);
+            return checkpoint;
+        }
+
+        synchronized boolean hasFillsSinceCheckpoint() {
+            if (checkpoints.isEmpty())
+                return true;
+            AccountCheckpoint last = checkpoints.get(checkpoints.size() - 1);
+            return last.lastFillTime != lastFillTime || last.fillsAtLastTime != fillsAtLastTime;
+        }
+
+        /**
+         * Re-adds a journaled checkpoint unless the store file already had it.
+         */
+        synchronized void replay(AccountCheckpoint checkpoint, long retentionMillis) {
+            if (!checkpoints.isEmpty() && checkpoints.get(checkpoints.size() - 1).timestamp >= checkpoint.timestamp)
+                return;
+            lastFillTime = checkpoint.lastFillTime;
+            fillsAtLastTime = checkpoint.fillsAtLastTime;
+            add(checkpoint, retentionMillis);
+        }
+
+        synchronized void resync(User user, long lastFillTime, int fillsAtLastTime, long retentionMillis) {
+            this.lastFillTime = lastFillTime;
+            this.fillsAtLastTime = fillsAtLastTime;
+            checkpoints.removeIf(c -> c.lastFillTime > lastFillTime
+                    || (c.lastFillTime == lastFillTime && c.fillsAtLastTime > fillsAtLastTime));
+            checkpoint(user, retentionMillis);
+        }
+
+        synchronized void add(AccountCheckpoint checkpoint, long retentionMillis) {
+            checkpoints.add(checkpoint);
+            int expired = 0;
+            while (expired < checkpoints.size() - 1
+                    && checkpoint.timestamp - checkpoints.get(expired).timestamp > retentionMillis) {
+                expired++;
+            }
+            if (expired > 0) {
+                checkpoints.subList(0, expired).clear();
+            }
+        }
+
+        /**
+         * The checkpoint closest in time to asOf.
+         */
+        synchronized AccountCheckpoint nearest(long asOf) {
+            // First checkpoint after asOf
+            int lo = 0;
+            int hi = checkpoints.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (checkpoints.get(mid).timestamp <= asOf) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == 0)
+                return checkpoints.get(0);
+            if (lo == checkpoints.size())
+                return checkpoints.get(lo - 1);
+            AccountCheckpoint before = checkpoints.get(lo - 1);
+            AccountCheckpoint after = checkpoints.get(lo);
+            return after.timestamp - asOf < asOf - before.timestamp ? after : before;
+        }
+
+        synchronized int size() {
+            return checkpoints.size();
+        }
+
+        synchronized AccountTimeline copy() {
+            AccountTimeline copy = new AccountTimeline();
+            copy.lastFillTime = lastFillTime;
+            copy.fillsAtLastTime = fillsAtLastTime;
+            copy.checkpoints.addAll(checkpoints); // checkpoints are immutable
+            return copy;
+        }
+    }
+
+    /**
+     * PriceSeries - Sampled (time, price) pairs in fixed-size chunks
+     */
+    private static class PriceSeries implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final int CHUNK = 512;
+
+        private final ArrayList<long[]> timeChunks = new ArrayList<>();
+        private final ArrayList<double[]> priceChunks = new ArrayList<>();
+        private int lastCount; // samples in the last chunk
+
+        /**
+         * Records the sample unless the last one is more recent than the
+         * sample interval; returns whether it was recorded.
+         */
+        synchronized boolean sample(long time, double price, long sampleMillis, long retentionMillis) {
+            if (!timeChunks.isEmpty()) {
+                long[] times = timeChunks.get(timeChunks.size() - 1);
+                long last = times[lastCount - 1];
+                if (time <= last || time - last < sampleMillis)
+                    return false;
+            }
+            if (timeChunks.isEmpty() || lastCount == CHUNK) {
+                timeChunks.add(new long[CHUNK]);
+                priceChunks.add(new double[CHUNK]);
+                lastCount = 0;
+                // Drop whole chunks that ended before the retention window
+                while (timeChunks.size() > 2 && time - timeChunks.get(0)[CHUNK - 1] > retentionMillis) {
+                    timeChunks.remove(0);
+                    priceChunks.remove(0);
+                }
+            }
+            timeChunks.get(timeChunks.size() - 1)[lastCount] = time;
+            priceChunks.get(priceChunks.size() - 1)[lastCount] = price;
+            lastCount++;
+            return true;
+        }
+
+        synchronized double priceAt(long time) {
+            if (timeChunks.isEmpty())
+                return Double.NaN;
+            // Last chunk whose first sample is at or before the time
+            int chunk = 0;
+            int lo = 0;
+            int hi = timeChunks.size() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timeChunks.get(mid)[0] <= time) {
+                    chunk = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            long[] times = timeChunks.get(chunk);
+            if (times[0] > time)
+                return priceChunks.get(0)[0]; // before the oldest sample
+            int count = chunk == timeChunks.size() - 1 ? lastCount : CHUNK;
+            int at = Arrays.binarySearch(times, 0, count, time);
+            if (at < 0) {
+                at = -at - 2;
+            }
+            return priceChunks.get(chunk)[at];
+        }
+
+        synchronized PriceSeries copy() {
+            PriceSeries copy = new PriceSeries();
+            int last = timeChunks.size() - 1;
+            for (int i = 0; i < timeChunks.size(); i++) {
+                copy.timeChunks.add(i == last ? timeChunks.get(i).clone() : timeChunks.get(i));
+                copy.priceChunks.add(i == last ? priceChunks.get(i).clone() : priceChunks.get(i));
+            }
+            copy.lastCount = lastCount;
+            return copy;
+        }
+    }
+
+    /**
+     * JournalEntry - A checkpoint for an account or a price sample for a symbol
+     */
+    private static final class JournalEntry {
+        private static final byte PRICE = 'P';
+        private static final byte CHECKPOINT = 'C';
+
+        final String key;
+        final long time;
+        final double price;
+        final AccountCheckpoint checkpoint; // null for a price sample
+
+        JournalEntry(String key, long time, double price, AccountCheckpoint checkpoint) {
+            this.key = key;
+            this.time = time;
+            this.price = price;
+            this.checkpoint = checkpoint;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            if (checkpoint == null) {
+                out.writeByte(PRICE);
+                out.writeUTF(key);
+                out.writeLong(time);
+                out.writeDouble(price);
+                return;
+            }
+            out.writeByte(CHECKPOINT);
+            out.writeUTF(key);
+            out.writeLong(checkpoint.timestamp);
+            out.writeDouble(checkpoint.cash);
+            out.writeInt(checkpoint.symbols.length);
+            for (int i = 0; i < checkpoint.symbols.length; i++) {
+                out.writeUTF(checkpoint.symbols[i]);
+                out.writeInt(checkpoint.shares[i]);
+            }
+            out.writeLong(checkpoint.lastFillTime);
+            out.writeInt(checkpoint.fillsAtLastTime);
+        }
+
+        static JournalEntry read(DataInputStream in) throws IOException {
+            byte type = in.readByte();
+            String key = in.readUTF();
+            if (type == PRICE)
+                return new JournalEntry(key, in.readLong(), in.readDouble(), null);
+            if (type != CHECKPOINT)
+                throw new EOFException("Unknown journal entry " + type); // torn tail
+            long timestamp = in.readLong();
+            double cash = in.readDouble();
+            String[] symbols = new String[in.readInt()];
+            int[] shares = new int[symbols.length];
+            for (int i = 0; i < symbols.length; i++) {
+                symbols[i] = in.readUTF();
+                shares[i] = in.readInt();
+            }
+            return new JournalEntry(key, 0, 0,
+                    new AccountCheckpoint(timestamp, cash, symbols, shares, in.readLong(), in.readInt()));
+        }
+    }
+}
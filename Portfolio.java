@@ -0,0 +1,73 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Portfolio Class - Manages user's stock holdings
+ */
+class Portfolio implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Map<String, PortfolioHolding> holdings;
+
+    public Portfolio() {
+        holdings = new HashMap<>();
+    }
+
+    public void addHolding(String symbol, int shares, double price) {
+        if (holdings.containsKey(symbol)) {
+            holdings.get(symbol).addShares(shares, price);
+        } else {
+            holdings.put(symbol, new PortfolioHolding(symbol, shares, price));
+        }
+    }
+
+    public boolean removeHolding(String symbol, int shares) {
+        if (!holdings.containsKey(symbol))
+            return false;
+
+        PortfolioHolding holding = holdings.get(symbol);
+        if (holding.getShares() < shares)
+            return false;
+
+        holding.removeShares(shares);
+        if (holding.getShares() == 0) {
+            holdings.remove(symbol);
+        }
+        return true;
+    }
+
+    public int getShares(String symbol) {
+        return holdings.containsKey(symbol) ? holdings.get(symbol).getShares() : 0;
+    }
+
+    public double getTotalValue(TradingEngine engine) {
+        double total = 0;
+        for (PortfolioHolding holding : holdings.values()) {
+            total += holding.getShares() * engine.getLastPrice(holding.getSymbol(), holding.getAverageCost());
+        }
+        return total;
+    }
+
+    public double getTotalGainLoss(TradingEngine engine) {
+        double totalGainLoss = 0;
+        for (PortfolioHolding holding : holdings.values()) {
+            double price = engine.getLastPrice(holding.getSymbol(), holding.getAverageCost());
+            double marketValue = holding.getShares() * price;
+            double costBasis = holding.getShares() * holding.getAverageCost();
+            totalGainLoss += (marketValue - costBasis);
+        }
+        return totalGainLoss;
+    }
+
+    public List<PortfolioHolding> getHoldings() {
+        return new ArrayList<>(holdings.values());
+    }
+
+    Portfolio copy() {
+        Portfolio copy = new Portfolio();
+        for (PortfolioHolding holding : holdings.values()) {
+            copy.holdings.put(holding.getSymbol(), holding.copy());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,45 @@
+import java.io.*;
+
+/**
+ * PortfolioHolding - Represents a stock holding in portfolio
+ */
+class PortfolioHolding implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String symbol;
+    private int shares;
+    private double averageCost;
+
+    public PortfolioHolding(String symbol, int shares, double cost) {
+        this.symbol = symbol;
+        this.shares = shares;
+        this.averageCost = cost;
+    }
+
+    public void addShares(int newShares, double price) {
+        double totalCost = (shares * averageCost) + (newShares * price);
+        shares += newShares;
+        averageCost = totalCost / shares;
+    }
+
+    public void removeShares(int sharesToSell) {
+        shares -= sharesToSell;
+    }
+
+    PortfolioHolding copy() {
+        return new PortfolioHolding(symbol, shares, averageCost);
+    }
+
+    // Getters and Setters
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getShares() {
+        return shares;
+    }
+
+    public double getAverageCost() {
+        return averageCost;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * PositionRow - One exported holding
+ */
+class PositionRow {
+    final String userId;
+    final String symbol;
+    final int shares;
+    final double averageCost;
+    final double price;
+
+    PositionRow(String userId, String symbol, int shares, double averageCost, double price) {
+        this.userId = userId;
+        this.symbol = symbol;
+        this.shares = shares;
+        this.averageCost = averageCost;
+        this.price = price;
+    }
+
+    double getMarketValue() {
+        return shares * price;
+    }
+
+    double getUnrealizedGainLoss() {
+        return shares * (price - averageCost);
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * ReferenceDataLoader - Streaming, parallel parser for instrument files.
+ *
+ * Universe files are CSV with the columns
+ *   symbol,name,price,marketCap,sector,tickSize,lotSize
+ * and delta files prefix each row with ADD, DELIST or CHANGE. A header row
+ * and blank lines are skipped and names may be double-quoted.
+ *
+ * The file is split into byte ranges cut at line ends and each range is
+ * memory-mapped and parsed on its own core straight from the mapping, so no
+ * copy of the file is held on the heap and rows keep file order. Bad rows are
+ * counted and reported, not fatal.
+ */
+class ReferenceDataLoader {
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final boolean deltas;
+    private final AtomicLong rejected = new AtomicLong();
+    private long rows;
+    private long bytes;
+    private long elapsedMillis;
+
+    private ReferenceDataLoader(boolean deltas) {
+        this.deltas = deltas;
+    }
+
+    /**
+     * Parses a full universe file; every row is an ADD.
+     */
+    static ReferenceDataLoader universe() {
+        return new ReferenceDataLoader(false);
+    }
+
+    /**
+     * Parses an intraday delta file.
+     */
+    static ReferenceDataLoader deltas() {
+        return new ReferenceDataLoader(true);
+    }
+
+    public List<ReferenceRecord> load(Path file) throws IOException {
+        long start = System.nanoTime();
+        List<ReferenceRecord> records;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = chunkBounds(channel, size);
+            records = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> parseChunk(channel, bounds[i], bounds[i + 1]))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+            bytes = size;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        rows = records.size();
+        elapsedMillis = (System.nanoTime() - start) / 1000000;
+        return records;
+    }
+
+    /**
+     * Splits the file into about one range per core, each ending just after
+     * a newline.
+     */
+    private static long[] chunkBounds(FileChannel channel, long size) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long chunk = Math.max(MIN_CHUNK_BYTES, size / Math.max(1, cores * 4) + 1);
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        java.nio.ByteBuffer probe = java.nio.ByteBuffer.allocate(4096);
+        long at = chunk;
+        while (at < size) {
+            long cut = -1;
+            long pos = at;
+            while (cut < 0 && pos < size) {
+                probe.clear();
+                int n = channel.read(probe, pos);
+                if (n <= 0)
+                    break;
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        cut = pos + i + 1;
+                        break;
+                    }
+                }
+                pos += n;
+            }
+            if (cut < 0 || cut >= size)
+                break;
+            bounds.add(cut);
+            at = cut + chunk;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private List<ReferenceRecord> parseChunk(FileChannel channel, long from, long to) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<ReferenceRecord> records = new ArrayList<>((int) ((to - from) / 48) + 1);
+        List<String> fields = new ArrayList<>(8);
+        byte[] field = new byte[256];
+        int length = 0;
+        boolean quoted = false;
+        long lineStart = from;
+        int limit = buffer.limit();
+        for (int i = 0; i <= limit; i++) {
+            byte b = i < limit ? buffer.get(i) : (byte) '\n';
+            if (quoted) {
+                if (b == '"') {
+                    if (i + 1 < limit && buffer.get(i + 1) == '"') {
+                        i++; // escaped quote
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                }
+            } else if (b == '"') {
+                quoted = true;
+                continue;
+            } else if (b == ',' || b == '\n') {
+                fields.add(new String(field, 0, length, StandardCharsets.UTF_8).trim());
+                length = 0;
+                if (b == '\n') {
+                    addRecord(records, fields, lineStart);
+                    fields.clear();
+                    lineStart = from + i + 1;
+                }
+                continue;
+            } else if (b == '\r') {
+                continue;
+            }
+            if (length == field.length) {
+                field = Arrays.copyOf(field, length * 2);
+            }
+            field[length++] = b;
+        }
+        return records;
+    }
+
+    private void addRecord(List<ReferenceRecord> records, List<String> fields, long lineStart) {
+        if (fields.size() == 1 && fields.get(0).isEmpty())
+            return; // blank line
+        String first = fields.get(0);
+        if (first.equalsIgnoreCase("symbol") || first.equalsIgnoreCase("action"))
+            return; // header
+        try {
+            records.add(parse(fields));
+        } catch (RuntimeException e) {
+            if (rejected.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+                System.err.println("Error parsing reference data at byte " + lineStart + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private ReferenceRecord parse(List<String> fields) {
+        int offset = 0;
+        UniverseAction action = UniverseAction.ADD;
+        if (deltas) {
+            action = UniverseAction.valueOf(fields.get(0).toUpperCase(Locale.ROOT));
+            offset = 1;
+        }
+        String symbol = text(fields, offset);
+        if (symbol == null)
+            throw new IllegalArgumentException("missing symbol");
+        String name = text(fields, offset + 1);
+        double price = number(fields, offset + 2);
+        if (action == UniverseAction.ADD && !(price > 0))
+            throw new IllegalArgumentException("missing price for " + symbol);
+        return new ReferenceRecord(action, symbol.toUpperCase(Locale.ROOT), name, price,
+                number(fields, offset + 3), text(fields, offset + 4), number(fields, offset + 5),
+                (int) number(fields, offset + 6));
+    }
+
+    private static String text(List<String> fields, int index) {
+        if (index >= fields.size() || fields.get(index).isEmpty())
+            return null;
+        return fields.get(index);
+    }
+
+    private static double number(List<String> fields, int index) {
+        String value = text(fields, index);
+        return value == null ? 0 : Double.parseDouble(value);
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows (%d rejected), %d KB in %d ms", rows, getRejected(), bytes / 1024,
+                elapsedMillis);
+    }
+}
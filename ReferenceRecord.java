@@ -0,0 +1,38 @@
+/**
+ * ReferenceRecord - One parsed instrument row; absent numbers are 0, absent
+ * text is null
+ */
+class ReferenceRecord {
+    final UniverseAction action;
+    final String symbol;
+    final String name;
+    final double price;
+    final double marketCap;
+    final String sector;
+    final double tickSize;
+    final int lotSize;
+
+    ReferenceRecord(UniverseAction action, String symbol, String name, double price, double marketCap,
+            String sector, double tickSize, int lotSize) {
+        this.action = action;
+        this.symbol = symbol;
+        this.name = name;
+        this.price = price;
+        this.marketCap = marketCap;
+        this.sector = sector;
+        this.tickSize = tickSize;
+        this.lotSize = lotSize;
+    }
+
+    /**
+     * The same reference fields without a price, for refreshing a stock
+     * whose price is already live.
+     */
+    ReferenceRecord withoutPrice() {
+        return new ReferenceRecord(action, symbol, name, 0, marketCap, sector, tickSize, lotSize);
+    }
+
+    Stock toStock() {
+        return new Stock(symbol, name == null ? symbol : name, price, marketCap, sector, tickSize, lotSize);
+    }
+}
@@ -0,0 +1,817 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * JournalFrame - Wire format of the replication stream.
+ *
+ * Every frame starts with a type byte, the journal sequence number and the
+ * primary's wall clock in millis, followed by a type specific body:
+ *
+ *   SNAPSHOT  - int length + serialized stocks, current user and accounts
+ *   SYMBOL    - varint id + symbol, defines an id used by TICK frames
+ *   TICK      - varint count, then (varint symbol id, double price, varint volume)
+ *   FILL      - user id, transaction id, symbol, type, shares, price,
+ *               timestamp, lot method ordinal + 1 (0 if none), lot id
+ *   ACCOUNT   - int length + serialized User
+ *   SESSION   - session state ordinal; an open rolls every stock's open
+ *   HEARTBEAT - no body; the sequence is the primary's latest
+ *   ACK       - sent by a standby: just the sequence it has applied
+ */
+final class JournalFrame {
+    static final byte SNAPSHOT = 'S';
+    static final byte SYMBOL = 'D';
+    static final byte TICK = 'T';
+    static final byte FILL = 'F';
+    static final byte ACCOUNT = 'A';
+    static final byte SESSION = 'O';
+    static final byte HEARTBEAT = 'H';
+    static final byte ACK = 'K';
+
+    // Serialized bodies may only hold engine state: anything else is refused
+    static final ObjectInputFilter STATE_FILTER = ObjectInputFilter.Config.createFilter("maxdepth=32;"
+            + "Stock;User;Portfolio;PortfolioHolding;Transaction;TaxLotLedger;LotBook;LotMethod;"
+            + "java.util.ArrayList;java.util.HashMap;java.util.LinkedHashMap;java.util.Date;java.util.Random;"
+            + "java.util.Map$Entry;java.lang.Enum;java.lang.Number;java.lang.Integer;java.lang.Long;"
+            + "java.lang.Double;java.lang.Object;!*");
+
+    private JournalFrame() {
+    }
+
+    static byte[] serialize(Object... objects) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            for (Object object : objects) {
+                oos.writeObject(object);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static ObjectInputStream deserialize(byte[] bytes) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        ois.setObjectInputFilter(STATE_FILTER);
+        return ois;
+    }
+}
+
+/**
+ * ReplicationPrimary - Streams the engine's ordered event log to standbys.
+ *
+ * Events are encoded once, on the engine thread, into a reused buffer and the
+ * resulting frame is offered to each standby's bounded queue; a sender thread
+ * per standby does all socket IO. A standby that falls a full queue behind is
+ * disconnected instead of slowing the engine down, and bootstraps again from
+ * a fresh snapshot when it reconnects.
+ *
+ * Standbys are not authenticated and receive every account, so the primary
+ * listens on the loopback interface unless given another bind address.
+ */
+class ReplicationPrimary implements EngineListener {
+    static final int QUEUE_CAPACITY = 65536;
+    static final long HEARTBEAT_MILLIS = 200;
+
+    private final TradingEngine engine;
+    private final InetAddress bindAddress;
+    private final int port;
+    private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private long sequence;
+
+    private ServerSocket serverSocket;
+    private ScheduledExecutorService heartbeat;
+    private volatile boolean running;
+
+    private final AtomicLong framesPublished = new AtomicLong();
+    private final AtomicLong bytesPublished = new AtomicLong();
+    private final AtomicLong replicasDropped = new AtomicLong();
+
+    public ReplicationPrimary(TradingEngine engine, int port) {
+        this(engine, InetAddress.getLoopbackAddress(), port);
+    }
+
+    public ReplicationPrimary(TradingEngine engine, InetAddress bindAddress, int port) {
+        this.engine = engine;
+        this.bindAddress = bindAddress;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, 50, bindAddress);
+        running = true;
+        engine.addListener(this);
+
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replication-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(this::publishHeartbeat, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        running = false;
+        engine.removeListener(this);
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // already closed
+        }
+        for (Replica replica : replicas) {
+            replica.close();
+        }
+    }
+
+    // Engine events, called with the engine lock held
+
+    @Override
+    public synchronized void onTick(Collection<Stock> stocks) {
+        if (replicas.isEmpty()) {
+            return; // a standby bootstraps from a snapshot, so nothing to keep
+        }
+        try {
+            for (Stock stock : stocks) {
+                if (!symbolIds.containsKey(stock.getSymbol())) {
+                    defineSymbol(stock.getSymbol());
+                }
+            }
+            begin(JournalFrame.TICK);
+            ColumnCodec.writeVarLong(out, stocks.size());
+            for (Stock stock : stocks) {
+                ColumnCodec.writeVarLong(out, symbolIds.get(stock.getSymbol()));
+                out.writeDouble(stock.getCurrentPrice());
+                ColumnCodec.writeVarLong(out, stock.getVolume());
+            }
+            publish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen writing to memory
+        }
+    }
+
+    @Override
+    public synchronized void onFill(User user, Transaction tx) {
+        if (replicas.isEmpty())
+            return;
+        try {
+            begin(JournalFrame.FILL);
+            out.writeUTF(user.getUserId());
+            out.writeUTF(tx.getTransactionId());
+            out.writeUTF(tx.getSymbol());
+            out.writeUTF(tx.getType());
+            out.writeInt(tx.getShares());
+            out.writeDouble(tx.getPrice());
+            out.writeLong(tx.getTimestamp().getTime());
+            out.writeByte(tx.getLotMethod() == null ? 0 : tx.getLotMethod().ordinal() + 1);
+            out.writeLong(tx.getLotId());
+            publish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void onAccountRegistered(User user) {
+        if (replicas.isEmpty())
+            return;
+        try {
+            byte[] bytes = JournalFrame.serialize(user.copy());
+            begin(JournalFrame.ACCOUNT);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            publish();
+        } catch (IOException e) {
+            System.err.println("Error replicating account: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void onSessionChange(SessionState state) {
+        if (replicas.isEmpty())
+            return;
+        try {
+            begin(JournalFrame.SESSION);
+            out.writeByte(state.ordinal());
+            publish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void defineSymbol(String symbol) throws IOException {
+        int id = symbols.size();
+        symbols.add(symbol);
+        symbolIds.put(symbol, id);
+        begin(JournalFrame.SYMBOL);
+        ColumnCodec.writeVarLong(out, id);
+        out.writeUTF(symbol);
+        publish();
+    }
+
+    private void begin(byte type) throws IOException {
+        buffer.reset();
+        out.writeByte(type);
+        out.writeLong(++sequence);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    private void publish() {
+        byte[] frame = buffer.toByteArray();
+        for (Replica replica : replicas) {
+            replica.offer(frame);
+        }
+        framesPublished.incrementAndGet();
+        bytesPublished.addAndGet(frame.length);
+    }
+
+    private synchronized void publishHeartbeat() {
+        buffer.reset();
+        try {
+            out.writeByte(JournalFrame.HEARTBEAT);
+            out.writeLong(sequence);
+            out.writeLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            return;
+        }
+        publish();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Replica replica = new Replica(socket);
+                // With the engine quiesced no callback can run, so the
+                // snapshot and the journal position line up exactly
+                engine.quiesce(() -> {
+                    synchronized (this) {
+                        replica.bootstrap = engine.captureSnapshot();
+                        replica.bootstrapSequence = sequence;
+                        replica.dictionary = new ArrayList<>(symbols);
+                        replicas.add(replica);
+                        if (engine.getSessionState() != SessionState.OPEN) {
+                            onSessionChange(engine.getSessionState()); // not in the snapshot; idempotent elsewhere
+                        }
+                    }
+                    return null;
+                });
+                replica.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Replication accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Largest number of events any connected standby has not acknowledged.
+     */
+    public long getMaxReplicaLag() {
+        long head = getSequence();
+        long lag = 0;
+        for (Replica replica : replicas) {
+            lag = Math.max(lag, head - replica.ackedSequence);
+        }
+        return lag;
+    }
+
+    public long getFramesPublished() {
+        return framesPublished.get();
+    }
+
+    public long getBytesPublished() {
+        return bytesPublished.get();
+    }
+
+    public long getReplicasDropped() {
+        return replicasDropped.get();
+    }
+
+    /**
+     * Replica - One connected standby
+     */
+    private class Replica {
+        private final Socket socket;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private EngineSnapshot bootstrap;
+        private long bootstrapSequence;
+        private List<String> dictionary;
+        private volatile long ackedSequence;
+        private volatile boolean closed;
+
+        Replica(Socket socket) {
+            this.socket = socket;
+        }
+
+        void offer(byte[] frame) {
+            if (!closed && !queue.offer(frame)) {
+                replicasDropped.incrementAndGet();
+                System.err.println("Standby " + socket.getRemoteSocketAddress() + " fell behind; disconnecting");
+                close();
+            }
+        }
+
+        void start() {
+            Thread sender = new Thread(this::sendLoop, "replication-send-" + socket.getPort());
+            sender.setDaemon(true);
+            sender.start();
+            Thread reader = new Thread(this::ackLoop, "replication-ack-" + socket.getPort());
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void sendLoop() {
+            try {
+                DataOutputStream os = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream(), 65536));
+                long now = System.currentTimeMillis();
+                byte[] state = JournalFrame.serialize(bootstrap.stocks, bootstrap.currentUser, bootstrap.accounts);
+                bootstrap = null;
+                os.writeByte(JournalFrame.SNAPSHOT);
+                os.writeLong(bootstrapSequence);
+                os.writeLong(now);
+                os.writeInt(state.length);
+                os.write(state);
+                for (int id = 0; id < dictionary.size(); id++) {
+                    os.writeByte(JournalFrame.SYMBOL);
+                    os.writeLong(bootstrapSequence);
+                    os.writeLong(now);
+                    ColumnCodec.writeVarLong(os, id);
+                    os.writeUTF(dictionary.get(id));
+                }
+                dictionary = null;
+                os.flush();
+
+                while (!closed) {
+                    byte[] frame = queue.take();
+                    os.write(frame);
+                    // Batch whatever else is queued into the same flush
+                    while ((frame = queue.poll()) != null) {
+                        os.write(frame);
+                    }
+                    os.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // standby went away
+            } finally {
+                close();
+            }
+        }
+
+        private void ackLoop() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (!closed) {
+                    if (in.readByte() == JournalFrame.ACK) {
+                        ackedSequence = in.readLong();
+                    }
+                }
+            } catch (IOException e) {
+                // standby went away
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed)
+                return;
+            closed = true;
+            replicas.remove(this);
+            queue.clear();
+            queue.offer(new byte[0]); // wake the sender
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
+
+/**
+ * ReplicationStandby - Applies a primary's event stream to a local engine and
+ * takes over when the primary goes quiet.
+ *
+ * A dropped connection is retried with backoff; each reconnect bootstraps
+ * again from a fresh snapshot. The standby only promotes itself once it has
+ * been bootstrapped and no frame has arrived, over the old or a new
+ * connection, for the failover timeout. A frame refused by the
+ * deserialization filter or otherwise malformed stops the standby instead:
+ * it means the stream cannot be trusted, not that the primary is gone.
+ * Standbys do not coordinate, so two standbys of a primary that dies both
+ * promote; give only one of them a listen port.
+ *
+ * Lag is reported both in events (primary head minus applied) and in
+ * milliseconds from the primary's frame timestamp, which assumes the clocks
+ * agree, as they do for processes on one host.
+ */
+class ReplicationStandby {
+    static final long DEFAULT_FAILOVER_TIMEOUT_MILLIS = 1000;
+    private static final long ACK_INTERVAL_NANOS = 50_000_000L;
+    private static final long MIN_RECONNECT_MILLIS = 10;
+
+    private final TradingEngine engine;
+    private final String host;
+    private final int port;
+    private final long failoverTimeoutMillis;
+    private Runnable onFailover;
+
+    private Socket socket;
+    private ScheduledExecutorService watchdog;
+    private final List<String> dictionary = new ArrayList<>();
+    private String[] tickSymbols = new String[0];
+    private double[] tickPrices = new double[0];
+    private long[] tickVolumes = new long[0];
+
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long lagMillis;
+    private volatile long lastFrameNanos;
+    private volatile boolean bootstrapped;
+    private volatile boolean promoted;
+    private volatile boolean stopped;
+    private volatile long failoverMillis = -1;
+    private volatile long reconnects;
+
+    public ReplicationStandby(TradingEngine engine, String host, int port, long failoverTimeoutMillis) {
+        this.engine = engine;
+        this.host = host;
+        this.port = port;
+        this.failoverTimeoutMillis = failoverTimeoutMillis;
+    }
+
+    /**
+     * Called once, on a watchdog or reader thread, when this standby decides
+     * the primary is gone and promotes itself.
+     */
+    public void setOnFailover(Runnable onFailover) {
+        this.onFailover = onFailover;
+    }
+
+    public void start() throws IOException {
+        connect();
+        lastFrameNanos = System.nanoTime();
+
+        Thread reader = new Thread(this::runLoop, "replication-standby");
+        reader.setDaemon(true);
+        reader.start();
+
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replication-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(10, failoverTimeoutMillis / 10);
+        watchdog.scheduleAtFixedRate(() -> {
+            long quietMillis = (System.nanoTime() - lastFrameNanos) / 1000000;
+            if (bootstrapped && !stopped && quietMillis > failoverTimeoutMillis) {
+                promote();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void connect() throws IOException {
+        Socket connected = new Socket(host, port);
+        connected.setTcpNoDelay(true);
+        if (promoted || stopped) {
+            connected.close();
+            return;
+        }
+        socket = connected;
+    }
+
+    /**
+     * Follows the primary, reconnecting with backoff whenever the connection
+     * drops, until promoted or stopped.
+     */
+    private void runLoop() {
+        long backoff = MIN_RECONNECT_MILLIS;
+        while (!promoted && !stopped) {
+            try {
+                readLoop();
+            } catch (ObjectStreamException | ClassNotFoundException e) {
+                System.err.println("Error replicating: rejected frame, standing down: " + e);
+                stop();
+                return;
+            } catch (IOException e) {
+                if (promoted || stopped)
+                    return;
+                System.err.println("Lost primary: " + e);
+            }
+            closeSocket();
+            while (!promoted && !stopped) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    connect();
+                    reconnects++;
+                    backoff = MIN_RECONNECT_MILLIS;
+                    break;
+                } catch (IOException e) {
+                    backoff = Math.min(backoff * 2, Math.max(MIN_RECONNECT_MILLIS, failoverTimeoutMillis / 4));
+                }
+            }
+        }
+    }
+
+    private void readLoop() throws IOException, ClassNotFoundException {
+        Socket current = socket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(current.getInputStream(), 65536));
+        DataOutputStream ackOut = new DataOutputStream(new BufferedOutputStream(current.getOutputStream()));
+        long lastAck = 0;
+        while (!promoted && !stopped) {
+            byte type = in.readByte();
+            long sequence = in.readLong();
+            long sentAt = in.readLong();
+            apply(type, sequence, in);
+
+            lastFrameNanos = System.nanoTime();
+            lagMillis = Math.max(0, System.currentTimeMillis() - sentAt);
+            primarySequence = Math.max(primarySequence, sequence);
+            if (type != JournalFrame.HEARTBEAT) {
+                appliedSequence = Math.max(appliedSequence, sequence);
+            }
+            if (in.available() == 0 && lastFrameNanos - lastAck > ACK_INTERVAL_NANOS) {
+                ackOut.writeByte(JournalFrame.ACK);
+                ackOut.writeLong(appliedSequence);
+                ackOut.flush();
+                lastAck = lastFrameNanos;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void apply(byte type, long sequence, DataInputStream in) throws IOException, ClassNotFoundException {
+        switch (type) {
+            case JournalFrame.SNAPSHOT: {
+                byte[] state = new byte[in.readInt()];
+                in.readFully(state);
+                try (ObjectInputStream ois = JournalFrame.deserialize(state)) {
+                    Map<String, Stock> stocks = (Map<String, Stock>) ois.readObject();
+                    User currentUser = (User) ois.readObject();
+                    Map<String, User> accounts = (Map<String, User>) ois.readObject();
+                    engine.restoreSnapshot(new EngineSnapshot(stocks, currentUser, accounts, 0));
+                }
+                dictionary.clear();
+                appliedSequence = sequence; // a restarted primary numbers from zero again
+                primarySequence = sequence;
+                bootstrapped = true;
+                break;
+            }
+            case JournalFrame.SYMBOL: {
+                int id = (int) ColumnCodec.readVarLong(in);
+                String symbol = in.readUTF();
+                while (dictionary.size() <= id) {
+                    dictionary.add(null);
+                }
+                dictionary.set(id, symbol);
+                break;
+            }
+            case JournalFrame.TICK: {
+                int count = (int) ColumnCodec.readVarLong(in);
+                if (tickSymbols.length < count) {
+                    tickSymbols = new String[count];
+                    tickPrices = new double[count];
+                    tickVolumes = new long[count];
+                }
+                for (int i = 0; i < count; i++) {
+                    tickSymbols[i] = dictionary.get((int) ColumnCodec.readVarLong(in));
+                    tickPrices[i] = in.readDouble();
+                    tickVolumes[i] = ColumnCodec.readVarLong(in);
+                }
+                engine.applyReplicatedTick(tickSymbols, tickPrices, tickVolumes, count);
+                break;
+            }
+            case JournalFrame.FILL: {
+                String userId = in.readUTF();
+                String transactionId = in.readUTF();
+                String symbol = in.readUTF();
+                String txType = in.readUTF();
+                int shares = in.readInt();
+                double price = in.readDouble();
+                long timestamp = in.readLong();
+                int method = in.readByte();
+                long lotId = in.readLong();
+                Transaction tx = new Transaction(transactionId, symbol, txType, shares, price, new Date(timestamp))
+                        .withLotSelection(method == 0 ? null : LotMethod.values()[method - 1], lotId);
+                engine.applyReplicatedFill(userId, tx);
+                break;
+            }
+            case JournalFrame.ACCOUNT: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                try (ObjectInputStream ois = JournalFrame.deserialize(bytes)) {
+                    engine.applyReplicatedAccount((User) ois.readObject());
+                }
+                break;
+            }
+            case JournalFrame.SESSION:
+                engine.applyReplicatedSession(SessionState.values()[in.readByte()]);
+                break;
+            case JournalFrame.HEARTBEAT:
+                break;
+            default:
+                throw new StreamCorruptedException("Unknown frame type " + type);
+        }
+    }
+
+    /**
+     * Stops following the primary and makes this engine authoritative. A
+     * standby that never received a snapshot has no state to take over with
+     * and refuses.
+     */
+    public synchronized void promote() {
+        if (promoted)
+            return;
+        if (!bootstrapped)
+            throw new IllegalStateException("Standby has not been bootstrapped from " + host + ":" + port);
+        if (stopped)
+            throw new IllegalStateException("Standby has stopped");
+        promoted = true;
+        failoverMillis = (System.nanoTime() - lastFrameNanos) / 1000000;
+        if (watchdog != null) {
+            watchdog.shutdown();
+        }
+        closeSocket();
+        if (onFailover != null) {
+            onFailover.run();
+        }
+    }
+
+    /**
+     * Stops following the primary without taking over.
+     */
+    public synchronized void stop() {
+        if (stopped || promoted)
+            return;
+        stopped = true;
+        if (watchdog != null) {
+            watchdog.shutdown();
+        }
+        closeSocket();
+    }
+
+    private synchronized void closeSocket() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Events the primary has announced that are not applied here yet.
+     */
+    public long getLagEvents() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public boolean isBootstrapped() {
+        return bootstrapped;
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public long getReconnects() {
+        return reconnects;
+    }
+
+    /**
+     * Time from the last frame received to promotion, or -1 if still standing by.
+     */
+    public long getFailoverMillis() {
+        return failoverMillis;
+    }
+}
+
+/**
+ * ReplicationNode - Headless primary or standby process for replication.
+ *
+ * Usage:
+ *   java ReplicationNode primary <port> [tickMillis]
+ *   java ReplicationNode standby <host> <port> [listenPort] [tickMillis]
+ *
+ * A primary ticks the market and trades for a demo account. A standby follows
+ * it; once promoted it starts ticking itself and, given a listen port,
+ * accepts standbys of its own. Primaries listen on loopback unless the
+ * trading.replication.bind property names another address.
+ */
+class ReplicationNode {
+    private static final String DEMO_USER = "Trader001";
+    static final String BIND_PROPERTY = "trading.replication.bind";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplicationNode primary <port> [tickMillis]");
+            System.err.println("       ReplicationNode standby <host> <port> [listenPort] [tickMillis]");
+            System.exit(1);
+        }
+        TradingEngine engine = new TradingEngine(null, null);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+        if ("primary".equals(args[0])) {
+            long tickMillis = args.length > 2 ? Long.parseLong(args[2]) : 100;
+            engine.setCurrentUser(new User(DEMO_USER, "Demo Trader", 1000000.00));
+            ReplicationPrimary primary = new ReplicationPrimary(engine, bindAddress(), Integer.parseInt(args[1]));
+            primary.start();
+            startTrading(engine, scheduler, tickMillis);
+            scheduler.scheduleAtFixedRate(() -> System.out.printf(
+                    "primary seq=%d standbys=%d maxLag=%d events frames=%d bytes=%d dropped=%d cash=%.2f%n",
+                    primary.getSequence(), primary.getReplicaCount(), primary.getMaxReplicaLag(),
+                    primary.getFramesPublished(), primary.getBytesPublished(), primary.getReplicasDropped(),
+                    engine.getAccount(DEMO_USER).getCashBalance()), 1, 1, TimeUnit.SECONDS);
+        } else {
+            String host = args[1];
+            int port = Integer.parseInt(args[2]);
+            int listenPort = args.length > 3 ? Integer.parseInt(args[3]) : -1;
+            long tickMillis = args.length > 4 ? Long.parseLong(args[4]) : 100;
+            ReplicationStandby standby = new ReplicationStandby(engine, host, port,
+                    ReplicationStandby.DEFAULT_FAILOVER_TIMEOUT_MILLIS);
+            standby.setOnFailover(() -> {
+                System.out.printf("standby promoted %d ms after the last frame at seq=%d%n",
+                        standby.getFailoverMillis(), standby.getAppliedSequence());
+                engine.setCurrentUser(engine.getAccount(DEMO_USER));
+                startTrading(engine, scheduler, tickMillis);
+                if (listenPort > 0) {
+                    try {
+                        new ReplicationPrimary(engine, bindAddress(), listenPort).start();
+                        System.out.println("now primary on port " + listenPort);
+                    } catch (IOException e) {
+                        System.err.println("Cannot listen on " + listenPort + ": " + e.getMessage());
+                    }
+                }
+            });
+            standby.start();
+            scheduler.scheduleAtFixedRate(() -> {
+                User user = engine.getAccount(DEMO_USER);
+                System.out.printf("%s seq=%d lag=%d events/%d ms cash=%s%n",
+                        standby.isPromoted() ? "promoted" : "standby", standby.getAppliedSequence(),
+                        standby.getLagEvents(), standby.getLagMillis(),
+                        user == null ? "-" : String.format("%.2f", user.getCashBalance()));
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static InetAddress bindAddress() throws UnknownHostException {
+        String bind = System.getProperty(BIND_PROPERTY);
+        return bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+    }
+
+    private static void startTrading(TradingEngine engine, ScheduledExecutorService scheduler, long tickMillis) {
+        Random random = new Random();
+        scheduler.scheduleAtFixedRate(() -> {
+            engine.updateMarketPrices();
+            List<Stock> stocks = engine.getAllStocks();
+            String symbol = stocks.get(random.nextInt(stocks.size())).getSymbol();
+            if (random.nextBoolean()) {
+                engine.buyStock(symbol, 1 + random.nextInt(10));
+            } else {
+                engine.sellStock(symbol, 1 + random.nextInt(10));
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+}
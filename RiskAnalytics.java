@@ -0,0 +1,387 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * RiskAnalytics - Streaming volatility, beta, correlation and VaR.
+ *
+ * Every tick appends one log return per symbol, plus the return of a
+ * market-cap weighted index of the whole universe, to ring buffers of the
+ * last `window` ticks. All rings share one slot per tick so returns stay
+ * aligned across symbols. Running sums (r, r^2 and r * index) are updated as
+ * samples enter and leave the window, so volatility and beta are O(1) per
+ * symbol per tick; sums are re-anchored once per window to stop drift.
+ * Series of symbols that leave the universe are dropped on the first tick
+ * after the universe version changes.
+ *
+ * Correlation matrices and VaR read a copy of the windows taken under the
+ * lock and do the heavy work outside it, the matrix in parallel.
+ */
+class RiskAnalytics {
+    static final int DEFAULT_WINDOW = 250;
+
+    private final int window;
+    private final Map<String, SymbolSeries> series = new HashMap<>();
+    private final SymbolSeries index;
+    private int slot; // next slot to write
+    private long ticks;
+    private long universeVersion = -1;
+
+    public RiskAnalytics(int window) {
+        this.window = window;
+        this.index = new SymbolSeries(window);
+    }
+
+    /**
+     * Consumes one tick of prices for the whole universe, at the given
+     * universe version.
+     */
+    public synchronized void onTick(Collection<Stock> stocks, long universeVersion) {
+        if (universeVersion != this.universeVersion) {
+            this.universeVersion = universeVersion;
+            Set<String> listed = new HashSet<>(stocks.size() * 2);
+            for (Stock stock : stocks) {
+                listed.add(stock.getSymbol());
+            }
+            series.keySet().retainAll(listed);
+        }
+        double totalCap = 0;
+        double weightedReturn = 0;
+        for (Stock stock : stocks) {
+            SymbolSeries s = series.computeIfAbsent(stock.getSymbol(), k -> new SymbolSeries(window));
+            double price = stock.getCurrentPrice();
+            if (s.lastPrice > 0 && price > 0) {
+                s.pending = Math.log(price / s.lastPrice);
+                s.hasPending = true;
+                totalCap += stock.getMarketCap();
+                weightedReturn += stock.getMarketCap() * s.pending;
+            }
+            s.lastPrice = price;
+        }
+        if (totalCap == 0)
+            return; // first tick only seeds prices
+
+        double indexReturn = weightedReturn / totalCap;
+        index.push(slot, indexReturn, 0);
+        for (SymbolSeries s : series.values()) {
+            if (!s.hasPending)
+                continue;
+            s.push(slot, s.pending, indexReturn);
+            s.hasPending = false;
+        }
+
+        slot = (slot + 1) % window;
+        ticks++;
+        if (ticks % window == 0) {
+            reanchor();
+        }
+    }
+
+    private void reanchor() {
+        index.reanchor();
+        for (SymbolSeries s : series.values()) {
+            s.reanchor();
+        }
+    }
+
+    /**
+     * Per-tick volatility (standard deviation of log returns) over the window.
+     */
+    public synchronized double getVolatility(String symbol) {
+        SymbolSeries s = series.get(symbol);
+        return s == null ? Double.NaN : s.stdDev();
+    }
+
+    /**
+     * Volatility scaled to a longer horizon, e.g. ticks per trading day.
+     */
+    public double getVolatility(String symbol, double ticksPerHorizon) {
+        return getVolatility(symbol) * Math.sqrt(ticksPerHorizon);
+    }
+
+    public synchronized double getIndexVolatility() {
+        return index.stdDev();
+    }
+
+    /**
+     * Beta of the symbol to the cap-weighted universe index.
+     */
+    public synchronized double getBeta(String symbol) {
+        SymbolSeries s = series.get(symbol);
+        if (s == null || s.count < 2)
+            return Double.NaN;
+        // Use the index statistics over the same ticks the symbol has seen
+        double n = s.count;
+        double idxMean = s.sumIndex / n;
+        double idxVar = (s.sumIndexSq - n * idxMean * idxMean) / (n - 1);
+        if (idxVar <= 0)
+            return Double.NaN;
+        double cov = (s.sumCross - n * s.mean() * idxMean) / (n - 1);
+        return cov / idxVar;
+    }
+
+    /**
+     * Pairwise correlation of the given symbols over their common window.
+     * Rows are computed in parallel across cores; the result is symmetric with
+     * ones on the diagonal and NaN where a symbol has no history yet.
+     */
+    public double[][] correlationMatrix(List<String> symbols) {
+        int n = symbols.size();
+        double[][] windows = new double[n][];
+        int common;
+        synchronized (this) {
+            common = window;
+            for (int i = 0; i < n; i++) {
+                SymbolSeries s = series.get(symbols.get(i));
+                common = Math.min(common, s == null ? 0 : s.count);
+            }
+            for (int i = 0; i < n; i++) {
+                SymbolSeries s = series.get(symbols.get(i));
+                windows[i] = s == null ? new double[0] : s.latest(slot, common);
+            }
+        }
+
+        double[][] result = new double[n][n];
+        if (common < 2) {
+            for (double[] row : result) {
+                Arrays.fill(row, Double.NaN);
+            }
+            return result;
+        }
+
+        // Standardize once so each pair is a single dot product
+        int m = common;
+        IntStream.range(0, n).parallel().forEach(i -> standardize(windows[i], m));
+        IntStream.range(0, n).parallel().forEach(i -> {
+            double[] a = windows[i];
+            result[i][i] = Double.isNaN(a[0]) ? Double.NaN : 1.0;
+            for (int j = i + 1; j < n; j++) {
+                double[] b = windows[j];
+                double dot = 0;
+                for (int k = 0; k < m; k++) {
+                    dot += a[k] * b[k];
+                }
+                result[i][j] = dot;
+                result[j][i] = dot;
+            }
+        });
+        return result;
+    }
+
+    private static void standardize(double[] values, int m) {
+        double mean = 0;
+        for (int k = 0; k < m; k++) {
+            mean += values[k];
+        }
+        mean /= m;
+        double ss = 0;
+        for (int k = 0; k < m; k++) {
+            values[k] -= mean;
+            ss += values[k] * values[k];
+        }
+        double norm = Math.sqrt(ss);
+        if (norm == 0) {
+            Arrays.fill(values, Double.NaN);
+            return;
+        }
+        for (int k = 0; k < m; k++) {
+            values[k] /= norm;
+        }
+    }
+
+    /**
+     * Historical one-tick VaR at the given confidence (e.g. 0.95) for the
+     * combined positions of the given accounts, as a positive dollar loss.
+     */
+    public double historicalVaR(Collection<User> accounts, double confidence) {
+        double[] pnl = positionPnLSeries(accounts);
+        if (pnl.length == 0)
+            return 0;
+        Arrays.sort(pnl);
+        int k = (int) Math.floor((1 - confidence) * pnl.length);
+        return Math.max(0, -pnl[Math.min(k, pnl.length - 1)]);
+    }
+
+    /**
+     * Parametric (variance-covariance) one-tick VaR. The portfolio variance
+     * w'Σw is taken from the position P&L series, which equals the sample
+     * covariance form without building Σ.
+     */
+    public double parametricVaR(Collection<User> accounts, double confidence) {
+        double[] pnl = positionPnLSeries(accounts);
+        if (pnl.length < 2)
+            return 0;
+        double mean = 0;
+        for (double v : pnl) {
+            mean += v;
+        }
+        mean /= pnl.length;
+        double ss = 0;
+        for (double v : pnl) {
+            ss += (v - mean) * (v - mean);
+        }
+        double sigma = Math.sqrt(ss / (pnl.length - 1));
+        return Math.max(0, inverseNormal(confidence) * sigma - mean);
+    }
+
+    public double historicalVaR(User account, double confidence) {
+        return historicalVaR(Collections.singletonList(account), confidence);
+    }
+
+    public double parametricVaR(User account, double confidence) {
+        return parametricVaR(Collections.singletonList(account), confidence);
+    }
+
+    /**
+     * Hypothetical P&L of today's positions over each tick in the window.
+     * Symbols with a shorter series, or none (delisted), are held flat for
+     * the ticks they lack instead of shortening the window for the rest.
+     */
+    private double[] positionPnLSeries(Collection<User> accounts) {
+        Map<String, Integer> shares = new HashMap<>();
+        for (User account : accounts) {
+            synchronized (account) {
+                for (PortfolioHolding holding : account.getPortfolio().getHoldings()) {
+                    shares.merge(holding.getSymbol(), holding.getShares(), Integer::sum);
+                }
+            }
+        }
+        synchronized (this) {
+            int depth = 0;
+            for (String symbol : shares.keySet()) {
+                SymbolSeries s = series.get(symbol);
+                if (s != null) {
+                    depth = Math.max(depth, s.count);
+                }
+            }
+            if (depth == 0)
+                return new double[0];
+
+            double[] pnl = new double[depth];
+            for (Map.Entry<String, Integer> entry : shares.entrySet()) {
+                SymbolSeries s = series.get(entry.getKey());
+                if (s == null)
+                    continue;
+                double value = entry.getValue() * s.lastPrice;
+                for (int k = 0; k < s.count; k++) {
+                    int at = Math.floorMod(slot - 1 - k, window);
+                    pnl[k] += value * Math.expm1(s.returns[at]);
+                }
+            }
+            return pnl;
+        }
+    }
+
+    /**
+     * Acklam's rational approximation of the standard normal quantile.
+     */
+    static double inverseNormal(double p) {
+        final double[] a = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+        final double[] b = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01 };
+        final double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+        final double[] d = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00 };
+        double q;
+        if (p < 0.02425) {
+            q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - 0.02425) {
+            q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * SymbolSeries - Ring of the last `window` returns with running sums
+     */
+    private static class SymbolSeries {
+        final double[] returns;
+        final double[] indexReturns; // index return at the same slot
+        int count;
+        double lastPrice;
+        double pending;
+        boolean hasPending;
+
+        double sum;
+        double sumSq;
+        double sumIndex;
+        double sumIndexSq;
+        double sumCross;
+
+        SymbolSeries(int window) {
+            returns = new double[window];
+            indexReturns = new double[window];
+        }
+
+        void push(int slot, double r, double indexReturn) {
+            if (count == returns.length) {
+                double old = returns[slot];
+                double oldIdx = indexReturns[slot];
+                sum -= old;
+                sumSq -= old * old;
+                sumIndex -= oldIdx;
+                sumIndexSq -= oldIdx * oldIdx;
+                sumCross -= old * oldIdx;
+            } else {
+                count++;
+            }
+            returns[slot] = r;
+            indexReturns[slot] = indexReturn;
+            sum += r;
+            sumSq += r * r;
+            sumIndex += indexReturn;
+            sumIndexSq += indexReturn * indexReturn;
+            sumCross += r * indexReturn;
+        }
+
+        void reanchor() {
+            sum = sumSq = sumIndex = sumIndexSq = sumCross = 0;
+            // Slots this series has not written yet are still zero
+            for (int k = 0; k < returns.length; k++) {
+                double r = returns[k];
+                double idx = indexReturns[k];
+                sum += r;
+                sumSq += r * r;
+                sumIndex += idx;
+                sumIndexSq += idx * idx;
+                sumCross += r * idx;
+            }
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        double stdDev() {
+            if (count < 2)
+                return Double.NaN;
+            double mean = sum / count;
+            double variance = (sumSq - count * mean * mean) / (count - 1);
+            return Math.sqrt(Math.max(0, variance));
+        }
+
+        /**
+         * Copies the latest m returns, newest first.
+         */
+        double[] latest(int nextSlot, int m) {
+            double[] copy = new double[m];
+            for (int k = 0; k < m; k++) {
+                copy[k] = returns[Math.floorMod(nextSlot - 1 - k, returns.length)];
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * ScanType - Rankings maintained by the market scanner
+ */
+enum ScanType {
+    TOP_GAINERS("Top Gainers"),
+    TOP_LOSERS("Top Losers"),
+    MOST_ACTIVE("Most Active");
+
+    private final String displayName;
+
+    ScanType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Ranking key; higher ranks first.
+     */
+    double key(Stock stock) {
+        switch (this) {
+            case TOP_GAINERS:
+                return stock.getChangePercent();
+            case TOP_LOSERS:
+                return -stock.getChangePercent();
+            default:
+                return stock.getVolume();
+        }
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,66 @@
+import java.time.*;
+
+/**
+ * SessionSchedule - Daily open and close times on weekdays in one time zone
+ */
+class SessionSchedule {
+    static final String PROPERTY = "trading.session";
+    static final String ZONE_PROPERTY = "trading.session.zone";
+
+    private final LocalTime open;
+    private final LocalTime close;
+    private final ZoneId zone;
+
+    SessionSchedule(LocalTime open, LocalTime close, ZoneId zone) {
+        if (!open.isBefore(close))
+            throw new IllegalArgumentException("Session must open before it closes: " + open + "-" + close);
+        this.open = open;
+        this.close = close;
+        this.zone = zone;
+    }
+
+    /**
+     * Parses "HH:mm-HH:mm", e.g. 09:30-16:00.
+     */
+    static SessionSchedule parse(String spec, ZoneId zone) {
+        String[] times = spec.trim().split("-");
+        if (times.length != 2)
+            throw new IllegalArgumentException("Expected HH:mm-HH:mm: " + spec);
+        return new SessionSchedule(LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim()), zone);
+    }
+
+    /**
+     * Schedule from the trading.session and trading.session.zone system
+     * properties, or null when none is configured.
+     */
+    static SessionSchedule fromSystemProperties() {
+        String spec = System.getProperty(PROPERTY);
+        if (spec == null)
+            return null;
+        String zone = System.getProperty(ZONE_PROPERTY);
+        try {
+            return parse(spec, zone == null ? ZoneId.systemDefault() : ZoneId.of(zone));
+        } catch (RuntimeException e) {
+            System.err.println("Error parsing session schedule: " + e.getMessage());
+            return null;
+        }
+    }
+
+    SessionState stateAt(long millis) {
+        ZonedDateTime time = Instant.ofEpochMilli(millis).atZone(zone);
+        DayOfWeek day = time.getDayOfWeek();
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY)
+            return SessionState.CLOSED;
+        LocalTime local = time.toLocalTime();
+        return !local.isBefore(open) && local.isBefore(close) ? SessionState.OPEN : SessionState.CLOSED;
+    }
+
+    LocalDate dateOf(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+    }
+
+    @Override
+    public String toString() {
+        return open + "-" + close + " " + zone;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * SessionState - Whether the market is trading
+ */
+enum SessionState {
+    OPEN, CLOSED
+}
@@ -0,0 +1,184 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * SnapshotWriter - Persists engine snapshots off the tick and order threads.
+ *
+ * A single daemon thread runs background persistence tasks (archive segment
+ * writes) and snapshot writes in submission order. Snapshots are never
+ * queued: submitting replaces any snapshot not yet written, so a slow disk
+ * only drops intermediate snapshots (counted as coalesced) and never makes the
+ * caller wait. Each write goes to a temp file that is renamed over the data
+ * file atomically, and only once every history archive has written and synced
+ * the rows drained into it: until then the previous data file is the only
+ * durable copy of those rows.
+ */
+class SnapshotWriter {
+    private final File dataFile;
+    private final Collection<TransactionArchive> archives;
+    private final ExecutorService executor;
+    private final AtomicReference<EngineSnapshot> pending = new AtomicReference<>();
+
+    // Metrics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastCaptureMicros;
+    private volatile long lastWriteMillis;
+    private volatile long maxWriteMillis;
+    private volatile long lastBytes;
+    private volatile long lastDurableCapturedAt;
+
+    public SnapshotWriter(File dataFile, Collection<TransactionArchive> archives) {
+        this.dataFile = dataFile;
+        this.archives = archives;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hands a snapshot to the writer thread without blocking.
+     */
+    public void submit(EngineSnapshot snapshot) {
+        submitted.incrementAndGet();
+        lastCaptureMicros = snapshot.captureNanos / 1000;
+        if (pending.getAndSet(snapshot) != null) {
+            coalesced.incrementAndGet();
+            return; // a write task is already queued and will pick this one up
+        }
+        executor.execute(this::writePending);
+    }
+
+    /**
+     * Runs a background persistence task on the writer thread, ordered with
+     * the snapshot writes.
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Waits for queued tasks and snapshots to reach disk.
+     */
+    public boolean flush(long timeoutMillis) {
+        Future<?> barrier = executor.submit(() -> {
+        });
+        try {
+            barrier.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    public void shutdown(long timeoutMillis) {
+        flush(timeoutMillis);
+        executor.shutdown();
+    }
+
+    private void writePending() {
+        EngineSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null)
+            return;
+
+        long start = System.nanoTime();
+        File temp = new File(dataFile.getPath() + ".tmp");
+        try {
+            // Segments are synced and renamed before the data file that no
+            // longer holds their rows replaces the old one
+            for (TransactionArchive archive : archives) {
+                archive.flushPending(); // retries segments whose earlier write failed
+            }
+            try (FileOutputStream fos = new FileOutputStream(temp);
+                    ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos, 65536))) {
+                // Same layout as before, with all accounts appended for newer readers
+                oos.writeObject(snapshot.stocks);
+                oos.writeObject(snapshot.currentUser);
+                oos.writeObject(snapshot.accounts);
+                oos.flush();
+                fos.getFD().sync();
+            }
+            lastBytes = temp.length();
+            Files.move(temp.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            written.incrementAndGet();
+            lastDurableCapturedAt = snapshot.capturedAt;
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            System.err.println("Error saving data: " + e.getMessage());
+        } finally {
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            lastWriteMillis = elapsed;
+            maxWriteMillis = Math.max(maxWriteMillis, elapsed);
+        }
+    }
+
+    public long getSnapshotsSubmitted() {
+        return submitted.get();
+    }
+
+    public long getSnapshotsWritten() {
+        return written.get();
+    }
+
+    /**
+     * Snapshots replaced by a newer one before the writer got to them.
+     */
+    public long getSnapshotsCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public boolean isWritePending() {
+        return pending.get() != null;
+    }
+
+    /**
+     * Time spent on the engine thread capturing the last snapshot.
+     */
+    public long getLastCaptureMicros() {
+        return lastCaptureMicros;
+    }
+
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public long getMaxWriteMillis() {
+        return maxWriteMillis;
+    }
+
+    public long getLastBytes() {
+        return lastBytes;
+    }
+
+    /**
+     * How far the data file trails the present, in milliseconds.
+     */
+    public long getPersistLagMillis() {
+        long durable = lastDurableCapturedAt;
+        return durable == 0 ? -1 : System.currentTimeMillis() - durable;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("snapshots: %d submitted, %d written, %d coalesced, %d failed; "
+                + "capture %dus, write %dms (max %dms), %d bytes, lag %dms",
+                getSnapshotsSubmitted(), getSnapshotsWritten(), getSnapshotsCoalesced(), getFailures(),
+                getLastCaptureMicros(), getLastWriteMillis(), getMaxWriteMillis(), getLastBytes(),
+                getPersistLagMillis());
+    }
+}
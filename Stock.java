@@ -0,0 +1,181 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Stock Class - Represents a stock with market data
+ */
+class Stock implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String symbol;
+    private String companyName;
+    private double currentPrice;
+    private double openPrice;
+    private double previousClose;
+    private long volume;
+    private double marketCap;
+    private Random random;
+    private transient long version; // bumped on every price change
+
+    // Reference data; unset (null/0) for stocks saved before it was loaded
+    private String sector;
+    private double tickSize;
+    private int lotSize;
+
+    static final double DEFAULT_TICK_SIZE = 0.01;
+    static final int DEFAULT_LOT_SIZE = 1;
+
+    public Stock(String symbol, String companyName, double initialPrice, double marketCap) {
+        this(symbol, companyName, initialPrice, marketCap, null, 0, 0);
+    }
+
+    /**
+     * Creates a stock from reference data. A tick size of 0 leaves prices
+     * unrounded and a lot size of 0 means single shares.
+     */
+    public Stock(String symbol, String companyName, double initialPrice, double marketCap, String sector,
+            double tickSize, int lotSize) {
+        this.symbol = symbol;
+        this.companyName = companyName;
+        this.currentPrice = initialPrice;
+        this.openPrice = initialPrice;
+        this.previousClose = initialPrice;
+        this.marketCap = marketCap;
+        this.sector = sector;
+        this.tickSize = tickSize;
+        this.lotSize = lotSize;
+        this.volume = (long) (Math.random() * 10000000) + 1000000;
+        this.random = new Random();
+    }
+
+    private Stock(Stock other) {
+        this.symbol = other.symbol;
+        this.companyName = other.companyName;
+        this.currentPrice = other.currentPrice;
+        this.openPrice = other.openPrice;
+        this.previousClose = other.previousClose;
+        this.volume = other.volume;
+        this.marketCap = other.marketCap;
+        this.random = other.random;
+        this.version = other.version;
+        this.sector = other.sector;
+        this.tickSize = other.tickSize;
+        this.lotSize = other.lotSize;
+    }
+
+    /**
+     * Point-in-time copy for snapshots.
+     */
+    Stock copy() {
+        return new Stock(this);
+    }
+
+    /**
+     * Copy with the reference fields the record sets; the price is only
+     * reset when the record carries one. Bumps the version so views refresh.
+     */
+    Stock withReferenceData(ReferenceRecord record) {
+        Stock changed = new Stock(this);
+        if (record.name != null)
+            changed.companyName = record.name;
+        if (record.sector != null)
+            changed.sector = record.sector;
+        if (record.tickSize > 0)
+            changed.tickSize = record.tickSize;
+        if (record.lotSize > 0)
+            changed.lotSize = record.lotSize;
+        if (record.marketCap > 0)
+            changed.marketCap = record.marketCap;
+        if (record.price > 0)
+            changed.currentPrice = changed.roundToTick(record.price);
+        changed.version++;
+        return changed;
+    }
+
+    private double roundToTick(double price) {
+        return tickSize > 0 ? Math.max(tickSize, Math.round(price / tickSize) * tickSize) : price;
+    }
+
+    public void updatePrice() {
+        // Simulate price movement (±2%)
+        double change = (random.nextDouble() - 0.5) * 0.04 * currentPrice;
+        currentPrice += change;
+        currentPrice = roundToTick(Math.max(1.0, currentPrice)); // Minimum price $1
+        volume += (long) (random.nextInt(100000));
+        version++;
+    }
+
+    /**
+     * Sets price and volume from an external source such as a replication
+     * stream instead of simulating them.
+     */
+    void applyQuote(double price, long newVolume) {
+        currentPrice = price;
+        volume = newVolume;
+        version++;
+    }
+
+    /**
+     * Starts a new session: the last price becomes the previous close and
+     * the open, and session volume starts again from zero.
+     */
+    void rollSession() {
+        previousClose = currentPrice;
+        openPrice = currentPrice;
+        volume = 0;
+        version++;
+    }
+
+    public double getPriceChange() {
+        return currentPrice - previousClose;
+    }
+
+    public double getChangePercent() {
+        return (currentPrice - previousClose) / previousClose;
+    }
+
+    // Getters
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public double getCurrentPrice() {
+        return currentPrice;
+    }
+
+    public double getOpenPrice() {
+        return openPrice;
+    }
+
+    public double getPreviousClose() {
+        return previousClose;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public double getMarketCap() {
+        return marketCap;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getSector() {
+        return sector == null ? "" : sector;
+    }
+
+    public double getTickSize() {
+        return tickSize > 0 ? tickSize : DEFAULT_TICK_SIZE;
+    }
+
+    public int getLotSize() {
+        return lotSize > 0 ? lotSize : DEFAULT_LOT_SIZE;
+    }
+}
@@ -9,6 +9,8 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
 import java.util.Timer;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
  * TASK 2: Stock Trading Platform
@@ -21,20 +23,45 @@ public class StockTradingPlatform extends JFrame {
     private User currentUser;
     private JTabbedPane tabbedPane;
 
+    // Startup: tabs not yet built, the loading indicator and timings
+    private static final long LAUNCH_NANOS = System.nanoTime();
+    private static final int MARKET_TAB = 0;
+    private static final int DEPTH_TAB = 1;
+    private static final int PORTFOLIO_TAB = 2;
+    private static final int TRANSACTION_TAB = 3;
+    private final Map<Integer, Supplier<JPanel>> pendingTabs = new HashMap<>();
+    private JProgressBar loadingBar;
+    private JLabel loadingLabel;
+    private JLabel statusLabel;
+    private long windowShownMillis = -1;
+
     // Market Panel Components
     private JTable marketTable;
-    private DefaultTableModel marketTableModel;
+    private MarketTableModel marketTableModel;
     private JLabel portfolioValueLabel;
     private JLabel cashBalanceLabel;
     private JLabel totalPLLabel;
+    private JLabel varLabel;
+
+    // Depth Panel Components
+    private DefaultTableModel depthTableModel;
+    private JLabel depthStatusLabel;
+    private DepthSubscription depthSubscription;
 
     // Portfolio Panel Components
     private JTable portfolioTable;
     private DefaultTableModel portfolioTableModel;
+    private JLabel realizedPLLabel;
 
     // Transaction History Components
     private JTable transactionTable;
     private DefaultTableModel transactionTableModel;
+    private final SimpleDateFormat transactionDateFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm");
+    private JLabel transactionPageLabel;
+    private JButton olderTransactionsButton;
+    private JButton newerTransactionsButton;
+    private long transactionPageEnd = -1; // end of the archived page shown; -1 shows the recent rows
+    private static final int TRANSACTION_PAGE_ROWS = TradingEngine.RECENT_HISTORY_LIMIT;
 
     // Colors
     private static final Color PRIMARY_COLOR = new Color(26, 35, 126);
@@ -45,17 +72,15 @@ public class StockTradingPlatform extends JFrame {
     private static final Color LOSS_COLOR = new Color(211, 47, 47);
     private static final Color LIGHT_BG = new Color(250, 250, 250);
 
+    // Rows shown in a scanner view of the market table
+    private static final int SCAN_ROWS = 25;
+
     private DecimalFormat priceFormat = new DecimalFormat("$#,##0.00");
     private DecimalFormat percentFormat = new DecimalFormat("+0.00%;-0.00%");
 
     public StockTradingPlatform() {
-        tradingEngine = new TradingEngine();
-        currentUser = new User("Trader001", "John Doe", 100000.00); // Starting with $100,000
-        tradingEngine.setCurrentUser(currentUser);
-
         initializeGUI();
-        startMarketUpdates();
-        refreshAllData();
+        loadEngine();
     }
 
     private void initializeGUI() {
@@ -69,14 +94,133 @@ public class StockTradingPlatform extends JFrame {
         JPanel headerPanel = createHeaderPanel();
         add(headerPanel, BorderLayout.NORTH);
 
-        // Create tabbed pane
+        // Create tabbed pane; each tab is built the first time it is shown
         tabbedPane = new JTabbedPane();
         tabbedPane.setFont(new Font("Segoe UI", Font.BOLD, 13));
-        tabbedPane.addTab("📊 Market", createMarketPanel());
-        tabbedPane.addTab("💼 Portfolio", createPortfolioPanel());
-        tabbedPane.addTab("📜 Transactions", createTransactionPanel());
+        tabbedPane.addTab("📊 Market", createLoadingPanel());
+        tabbedPane.addTab("📚 Depth", createPendingPanel());
+        tabbedPane.addTab("💼 Portfolio", createPendingPanel());
+        tabbedPane.addTab("📜 Transactions", createPendingPanel());
+        pendingTabs.put(MARKET_TAB, this::createMarketPanel);
+        pendingTabs.put(DEPTH_TAB, this::createDepthPanel);
+        pendingTabs.put(PORTFOLIO_TAB, this::createPortfolioPanel);
+        pendingTabs.put(TRANSACTION_TAB, this::createTransactionPanel);
+        tabbedPane.addChangeListener(e -> {
+            buildTab(tabbedPane.getSelectedIndex());
+            refreshAllData();
+        });
 
         add(tabbedPane, BorderLayout.CENTER);
+
+        statusLabel = new JLabel("Starting…");
+        statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        statusLabel.setBorder(new EmptyBorder(4, 20, 4, 20));
+        add(statusLabel, BorderLayout.SOUTH);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                windowShownMillis = (System.nanoTime() - LAUNCH_NANOS) / 1000000;
+            }
+        });
+    }
+
+    private JPanel createLoadingPanel() {
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.setBackground(LIGHT_BG);
+
+        JPanel content = new JPanel(new BorderLayout(0, 10));
+        content.setOpaque(false);
+        loadingLabel = new JLabel("Loading trading data…", SwingConstants.CENTER);
+        loadingLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        loadingLabel.setForeground(PRIMARY_COLOR);
+        loadingBar = new JProgressBar();
+        loadingBar.setIndeterminate(true);
+        loadingBar.setPreferredSize(new Dimension(360, 18));
+        content.add(loadingLabel, BorderLayout.NORTH);
+        content.add(loadingBar, BorderLayout.CENTER);
+
+        panel.add(content);
+        return panel;
+    }
+
+    private JPanel createPendingPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBackground(LIGHT_BG);
+        JLabel label = new JLabel("Loading…", SwingConstants.CENTER);
+        label.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        panel.add(label, BorderLayout.CENTER);
+        return panel;
+    }
+
+    /**
+     * Swaps a tab's placeholder for its real panel, once the engine has
+     * loaded; does nothing for a tab already built.
+     */
+    private void buildTab(int index) {
+        if (tradingEngine == null)
+            return;
+        Supplier<JPanel> factory = pendingTabs.remove(index);
+        if (factory != null) {
+            tabbedPane.setComponentAt(index, factory.get());
+        }
+    }
+
+    /**
+     * Loads the engine and its data file off the EDT, so the window paints
+     * straight away and the data file's size only delays the tables.
+     */
+    private void loadEngine() {
+        new SwingWorker<TradingEngine, String>() {
+            private User user;
+
+            @Override
+            protected TradingEngine doInBackground() {
+                publish("Loading market data and accounts…");
+                TradingEngine engine = new TradingEngine();
+                user = engine.getAccount("Trader001");
+                if (user == null) {
+                    user = new User("Trader001", "John Doe", 100000.00); // Starting with $100,000
+                }
+                engine.setCurrentUser(user);
+                Runtime.getRuntime().addShutdownHook(new Thread(engine::shutdown, "engine-shutdown"));
+                publish("Starting services…");
+                HttpApi.startFromSystemProperties(engine);
+                return engine;
+            }
+
+            @Override
+            protected void process(List<String> stages) {
+                loadingLabel.setText(stages.get(stages.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    engineLoaded(get(), user);
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Error loading trading data: " + cause.getMessage());
+                    loadingBar.setIndeterminate(false);
+                    loadingLabel.setText("Failed to load trading data: " + cause.getMessage());
+                    statusLabel.setText("Startup failed");
+                }
+            }
+        }.execute();
+    }
+
+    private void engineLoaded(TradingEngine engine, User user) {
+        tradingEngine = engine;
+        currentUser = user;
+        buildTab(MARKET_TAB);
+        buildTab(tabbedPane.getSelectedIndex());
+        startMarketUpdates();
+        refreshAllData();
+
+        long readyMillis = (System.nanoTime() - LAUNCH_NANOS) / 1000000;
+        String report = String.format("window shown %,d ms · engine loaded %,d ms · ready %,d ms",
+                windowShownMillis, engine.getStartupMillis(), readyMillis);
+        statusLabel.setText("Startup: " + report);
     }
 
     private JPanel createHeaderPanel() {
@@ -104,6 +248,10 @@ public class StockTradingPlatform extends JFrame {
         totalPLLabel = new JLabel();
         totalPLLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
 
+        varLabel = new JLabel();
+        varLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        varLabel.setForeground(Color.WHITE);
+
         infoPanel.add(new JLabel("💰 Cash: ") {
             {
                 setForeground(Color.WHITE);
@@ -127,6 +275,14 @@ public class StockTradingPlatform extends JFrame {
             }
         });
         infoPanel.add(totalPLLabel);
+        infoPanel.add(Box.createHorizontalStrut(10));
+        infoPanel.add(new JLabel("📉 VaR 95%: ") {
+            {
+                setForeground(Color.WHITE);
+                setFont(new Font("Segoe UI", Font.PLAIN, 14));
+            }
+        });
+        infoPanel.add(varLabel);
 
         panel.add(titleLabel, BorderLayout.WEST);
         panel.add(infoPanel, BorderLayout.EAST);
@@ -140,13 +296,7 @@ public class StockTradingPlatform extends JFrame {
         mainPanel.setBackground(LIGHT_BG);
 
         // Market table
-        String[] columns = { "Symbol", "Company", "Price", "Change", "Change %", "Volume", "Market Cap" };
-        marketTableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        marketTableModel = new MarketTableModel(tradingEngine);
 
         marketTable = new JTable(marketTableModel);
         marketTable.setRowHeight(35);
@@ -156,6 +306,17 @@ public class StockTradingPlatform extends JFrame {
         marketTable.getTableHeader().setBackground(PRIMARY_COLOR);
         marketTable.getTableHeader().setForeground(Color.WHITE);
         marketTable.getTableHeader().setPreferredSize(new Dimension(0, 40));
+        marketTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = marketTable.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    String selected = getSelectedMarketSymbol();
+                    marketTableModel.toggleSort(marketTable.convertColumnIndexToModel(column));
+                    reselectMarketSymbol(selected);
+                }
+            }
+        });
 
         // Custom renderer for colored change columns
         marketTable.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
@@ -190,6 +351,54 @@ public class StockTradingPlatform extends JFrame {
         JScrollPane scrollPane = new JScrollPane(marketTable);
         mainPanel.add(scrollPane, BorderLayout.CENTER);
 
+        // Symbol / company filter
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        filterPanel.setBackground(LIGHT_BG);
+        JLabel filterLabel = new JLabel("🔍 Filter:");
+        filterLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        JTextField filterField = new JTextField(20);
+        filterField.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        filterField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                applyFilter();
+            }
+
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                applyFilter();
+            }
+
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                applyFilter();
+            }
+
+            private void applyFilter() {
+                String selected = getSelectedMarketSymbol();
+                marketTableModel.setFilter(filterField.getText());
+                reselectMarketSymbol(selected);
+            }
+        });
+        filterPanel.add(filterLabel);
+        filterPanel.add(filterField);
+
+        // Scanner views: ranked top movers instead of the full universe
+        JComboBox<Object> scanCombo = new JComboBox<>();
+        scanCombo.addItem("All Stocks");
+        for (ScanType type : ScanType.values()) {
+            scanCombo.addItem(type);
+        }
+        scanCombo.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        scanCombo.addActionListener(e -> {
+            Object item = scanCombo.getSelectedItem();
+            String selected = getSelectedMarketSymbol();
+            marketTableModel.setScan(item instanceof ScanType ? (ScanType) item : null, SCAN_ROWS);
+            reselectMarketSymbol(selected);
+        });
+        JLabel scanLabel = new JLabel("📈 View:");
+        scanLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        filterPanel.add(scanLabel);
+        filterPanel.add(scanCombo);
+        mainPanel.add(filterPanel, BorderLayout.NORTH);
+
         // Action buttons
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
         buttonPanel.setBackground(LIGHT_BG);
@@ -215,6 +424,143 @@ public class StockTradingPlatform extends JFrame {
         return mainPanel;
     }
 
+    private JPanel createDepthPanel() {
+        JPanel mainPanel = new JPanel(new BorderLayout(15, 15));
+        mainPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
+        mainPanel.setBackground(LIGHT_BG);
+
+        // Symbol and depth selection
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        controlPanel.setBackground(LIGHT_BG);
+        List<String> symbols = new ArrayList<>();
+        for (Stock stock : tradingEngine.getAllStocks()) {
+            symbols.add(stock.getSymbol());
+        }
+        Collections.sort(symbols);
+        JComboBox<String> symbolCombo = new JComboBox<>(symbols.toArray(new String[0]));
+        symbolCombo.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        JComboBox<Integer> depthCombo = new JComboBox<>(new Integer[] { 5, 10, 20 });
+        depthCombo.setSelectedItem(10);
+        depthCombo.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        java.awt.event.ActionListener resubscribe = e -> subscribeDepth((String) symbolCombo.getSelectedItem(),
+                (Integer) depthCombo.getSelectedItem());
+        symbolCombo.addActionListener(resubscribe);
+        depthCombo.addActionListener(resubscribe);
+
+        JLabel symbolLabel = new JLabel("📚 Symbol:");
+        symbolLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        JLabel depthLabel = new JLabel("Levels:");
+        depthLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        controlPanel.add(symbolLabel);
+        controlPanel.add(symbolCombo);
+        controlPanel.add(depthLabel);
+        controlPanel.add(depthCombo);
+        mainPanel.add(controlPanel, BorderLayout.NORTH);
+
+        // Ladder: bids on the left, asks on the right, best level on top
+        String[] columns = { "Bid Size", "Bid", "Ask", "Ask Size" };
+        depthTableModel = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable depthTable = new JTable(depthTableModel);
+        depthTable.setRowHeight(30);
+        depthTable.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        depthTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 12));
+        depthTable.getTableHeader().setBackground(PRIMARY_COLOR);
+        depthTable.getTableHeader().setForeground(Color.WHITE);
+        depthTable.getTableHeader().setPreferredSize(new Dimension(0, 40));
+        depthTable.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value,
+                    boolean isSelected, boolean hasFocus, int row, int column) {
+                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                c.setForeground(column < 2 ? PROFIT_COLOR : LOSS_COLOR);
+                c.setBackground(Color.WHITE);
+                setHorizontalAlignment(SwingConstants.CENTER);
+                return c;
+            }
+        });
+        mainPanel.add(new JScrollPane(depthTable), BorderLayout.CENTER);
+
+        depthStatusLabel = new JLabel(" ");
+        depthStatusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        mainPanel.add(depthStatusLabel, BorderLayout.SOUTH);
+
+        if (!symbols.isEmpty()) {
+            subscribeDepth(symbols.get(0), 10);
+        }
+        return mainPanel;
+    }
+
+    /**
+     * Follows one symbol's depth; updates arrive conflated on the EDT.
+     */
+    private void subscribeDepth(String symbol, int depth) {
+        if (depthSubscription != null) {
+            depthSubscription.cancel();
+            depthSubscription = null;
+        }
+        if (symbol == null || tradingEngine.getStock(symbol) == null)
+            return;
+        DepthView view = new DepthView();
+        DepthSubscription subscription = tradingEngine.getDepthFeed().subscribe(symbol, depth,
+                SwingUtilities::invokeLater, new DepthListener() {
+                    @Override
+                    public void onSnapshot(DepthSnapshot snapshot) {
+                        view.onSnapshot(snapshot);
+                        showDepth(view);
+                    }
+
+                    @Override
+                    public void onUpdate(DepthUpdate update) {
+                        view.onUpdate(update);
+                        showDepth(view);
+                    }
+                });
+        view.attach(subscription);
+        depthSubscription = subscription;
+    }
+
+    private void showDepth(DepthView view) {
+        DepthSubscription subscription = depthSubscription;
+        if (subscription == null)
+            return;
+        List<Map.Entry<Double, Long>> bids = view.getBids();
+        List<Map.Entry<Double, Long>> asks = view.getAsks();
+        int rows = Math.min(subscription.getDepth(), Math.max(bids.size(), asks.size()));
+        depthTableModel.setRowCount(rows);
+        for (int row = 0; row < rows; row++) {
+            boolean hasBid = row < bids.size();
+            boolean hasAsk = row < asks.size();
+            depthTableModel.setValueAt(hasBid ? String.format("%,d", bids.get(row).getValue()) : "", row, 0);
+            depthTableModel.setValueAt(hasBid ? priceFormat.format(bids.get(row).getKey()) : "", row, 1);
+            depthTableModel.setValueAt(hasAsk ? priceFormat.format(asks.get(row).getKey()) : "", row, 2);
+            depthTableModel.setValueAt(hasAsk ? String.format("%,d", asks.get(row).getValue()) : "", row, 3);
+        }
+        depthStatusLabel.setText(String.format("Sequence %d · %d updates · %d snapshots · %d conflated · %d gaps",
+                view.getSequence(), subscription.getUpdatesSent(), subscription.getSnapshotsSent(),
+                subscription.getConflated(), view.getGaps()));
+    }
+
+    private String getSelectedMarketSymbol() {
+        int row = marketTable.getSelectedRow();
+        return row == -1 ? null : marketTableModel.getStockAt(row).getSymbol();
+    }
+
+    private void reselectMarketSymbol(String symbol) {
+        if (symbol == null)
+            return;
+        int row = marketTableModel.rowOf(symbol);
+        if (row == -1) {
+            marketTable.clearSelection();
+        } else if (marketTable.getSelectedRow() != row) {
+            marketTable.setRowSelectionInterval(row, row);
+        }
+    }
+
     private JPanel createPortfolioPanel() {
         JPanel mainPanel = new JPanel(new BorderLayout(15, 15));
         mainPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
@@ -224,7 +570,15 @@ public class StockTradingPlatform extends JFrame {
         JLabel titleLabel = new JLabel("My Portfolio Holdings");
         titleLabel.setFont(new Font("Segoe UI", Font.BOLD, 20));
         titleLabel.setForeground(PRIMARY_COLOR);
-        mainPanel.add(titleLabel, BorderLayout.NORTH);
+
+        realizedPLLabel = new JLabel();
+        realizedPLLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
+
+        JPanel titlePanel = new JPanel(new BorderLayout());
+        titlePanel.setOpaque(false);
+        titlePanel.add(titleLabel, BorderLayout.WEST);
+        titlePanel.add(realizedPLLabel, BorderLayout.EAST);
+        mainPanel.add(titlePanel, BorderLayout.NORTH);
 
         // Portfolio table
         String[] columns = { "Symbol", "Company", "Shares", "Avg Cost", "Current Price", "Market Value", "Gain/Loss",
@@ -338,6 +692,34 @@ public class StockTradingPlatform extends JFrame {
         JScrollPane scrollPane = new JScrollPane(transactionTable);
         mainPanel.add(scrollPane, BorderLayout.CENTER);
 
+        // Paging back through archived history
+        JPanel pagePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
+        pagePanel.setBackground(LIGHT_BG);
+        olderTransactionsButton = createStyledButton("◀ Older", ACCENT_COLOR);
+        olderTransactionsButton.addActionListener(e -> {
+            long end = transactionPageEnd < 0 ? tradingEngine.getArchivedTransactionCount(currentUser)
+                    : transactionPageEnd - TRANSACTION_PAGE_ROWS;
+            if (end > 0) {
+                showArchivedTransactions(end);
+            }
+        });
+        newerTransactionsButton = createStyledButton("Newer ▶", ACCENT_COLOR);
+        newerTransactionsButton.addActionListener(e -> {
+            long end = transactionPageEnd + TRANSACTION_PAGE_ROWS;
+            if (transactionPageEnd < 0 || end >= tradingEngine.getArchivedTransactionCount(currentUser)) {
+                transactionPageEnd = -1;
+                refreshTransactions();
+            } else {
+                showArchivedTransactions(end);
+            }
+        });
+        transactionPageLabel = new JLabel(" ");
+        transactionPageLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        pagePanel.add(transactionPageLabel);
+        pagePanel.add(olderTransactionsButton);
+        pagePanel.add(newerTransactionsButton);
+        mainPanel.add(pagePanel, BorderLayout.SOUTH);
+
         return mainPanel;
     }
 
@@ -372,8 +754,8 @@ public class StockTradingPlatform extends JFrame {
             return;
         }
 
-        String symbol = marketTable.getValueAt(selectedRow, 0).toString();
-        Stock stock = tradingEngine.getStock(symbol);
+        Stock stock = marketTableModel.getStockAt(selectedRow);
+        String symbol = stock.getSymbol();
 
         JDialog dialog = new JDialog(this, "Buy Stock - " + symbol, true);
         dialog.setSize(400, 300);
@@ -402,14 +784,16 @@ public class StockTradingPlatform extends JFrame {
         gbc.gridy = 2;
         panel.add(new JLabel("Shares:"), gbc);
         gbc.gridx = 1;
-        JSpinner sharesSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 10000, 1));
+        int lot = stock.getLotSize();
+        int maxShares = Math.max(lot, 10000 - 10000 % lot);
+        JSpinner sharesSpinner = new JSpinner(new SpinnerNumberModel(lot, lot, maxShares, lot));
         panel.add(sharesSpinner, gbc);
 
         gbc.gridx = 0;
         gbc.gridy = 3;
         panel.add(new JLabel("Total Cost:"), gbc);
         gbc.gridx = 1;
-        JLabel totalLabel = new JLabel(priceFormat.format(stock.getCurrentPrice()));
+        JLabel totalLabel = new JLabel(priceFormat.format(lot * stock.getCurrentPrice()));
         totalLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
         panel.add(totalLabel, gbc);
 
@@ -436,7 +820,7 @@ public class StockTradingPlatform extends JFrame {
                 refreshAllData();
             } else {
                 JOptionPane.showMessageDialog(dialog,
-                        "Insufficient funds to complete this purchase.",
+                        rejectionReason(stock, shares, "Insufficient funds to complete this purchase."),
                         "Purchase Failed", JOptionPane.ERROR_MESSAGE);
             }
         });
@@ -453,6 +837,9 @@ public class StockTradingPlatform extends JFrame {
     }
 
     private void showSellDialog() {
+        if (portfolioTable == null) {
+            tabbedPane.setSelectedIndex(PORTFOLIO_TAB); // builds the holdings to pick from
+        }
         int selectedRow = portfolioTable.getSelectedRow();
         if (selectedRow == -1) {
             JOptionPane.showMessageDialog(this, "Please select a stock from your portfolio to sell.",
@@ -463,9 +850,21 @@ public class StockTradingPlatform extends JFrame {
         String symbol = portfolioTable.getValueAt(selectedRow, 0).toString();
         int availableShares = Integer.parseInt(portfolioTable.getValueAt(selectedRow, 2).toString());
         Stock stock = tradingEngine.getStock(symbol);
+        if (stock == null) {
+            JOptionPane.showMessageDialog(this, symbol + " is no longer listed and cannot be traded.",
+                    "Delisted", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        int lot = stock.getLotSize();
+        int sellableShares = availableShares - availableShares % lot;
+        if (sellableShares == 0) {
+            JOptionPane.showMessageDialog(this, symbol + " trades in lots of " + lot + " shares and you hold "
+                    + availableShares + ".", "Below Lot Size", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
 
         JDialog dialog = new JDialog(this, "Sell Stock - " + symbol, true);
-        dialog.setSize(400, 300);
+        dialog.setSize(400, 350);
         dialog.setLocationRelativeTo(this);
 
         JPanel panel = new JPanel(new GridBagLayout());
@@ -497,14 +896,24 @@ public class StockTradingPlatform extends JFrame {
         gbc.gridy = 3;
         panel.add(new JLabel("Shares to Sell:"), gbc);
         gbc.gridx = 1;
-        JSpinner sharesSpinner = new JSpinner(new SpinnerNumberModel(1, 1, availableShares, 1));
+        JSpinner sharesSpinner = new JSpinner(new SpinnerNumberModel(lot, lot, sellableShares, lot));
         panel.add(sharesSpinner, gbc);
 
         gbc.gridx = 0;
         gbc.gridy = 4;
+        panel.add(new JLabel("Lot Method:"), gbc);
+        gbc.gridx = 1;
+        JComboBox<LotMethod> lotMethodBox = new JComboBox<>(new LotMethod[] { LotMethod.FIFO, LotMethod.LIFO });
+        if (currentUser.getLotLedger() != null) {
+            lotMethodBox.setSelectedItem(currentUser.getLotLedger().getDefaultMethod());
+        }
+        panel.add(lotMethodBox, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 5;
         panel.add(new JLabel("Total Value:"), gbc);
         gbc.gridx = 1;
-        JLabel totalLabel = new JLabel(priceFormat.format(stock.getCurrentPrice()));
+        JLabel totalLabel = new JLabel(priceFormat.format(lot * stock.getCurrentPrice()));
         totalLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
         panel.add(totalLabel, gbc);
 
@@ -515,14 +924,15 @@ public class StockTradingPlatform extends JFrame {
         });
 
         gbc.gridx = 0;
-        gbc.gridy = 5;
+        gbc.gridy = 6;
         gbc.gridwidth = 2;
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
 
         JButton confirmButton = createStyledButton("Confirm Sell", SUCCESS_COLOR);
         confirmButton.addActionListener(e -> {
             int shares = (int) sharesSpinner.getValue();
-            if (tradingEngine.sellStock(symbol, shares)) {
+            LotMethod method = (LotMethod) lotMethodBox.getSelectedItem();
+            if (tradingEngine.sellStock(symbol, shares, method, 0)) {
                 JOptionPane.showMessageDialog(dialog,
                         "Successfully sold " + shares + " shares of " + symbol,
                         "Sale Successful", JOptionPane.INFORMATION_MESSAGE);
@@ -530,7 +940,7 @@ public class StockTradingPlatform extends JFrame {
                 refreshAllData();
             } else {
                 JOptionPane.showMessageDialog(dialog,
-                        "Failed to sell stocks. Please try again.",
+                        rejectionReason(stock, shares, "You do not hold " + shares + " shares of " + symbol + "."),
                         "Sale Failed", JOptionPane.ERROR_MESSAGE);
             }
         });
@@ -546,47 +956,133 @@ public class StockTradingPlatform extends JFrame {
         dialog.setVisible(true);
     }
 
+    // The engine only reports that an order was rejected; work out why from
+    // the checks it makes before touching the account
+    private String rejectionReason(Stock stock, int shares, String accountReason) {
+        if (tradingEngine.getSessionState() != SessionState.OPEN)
+            return "The market is closed. Orders are accepted again when the session opens.";
+        if (shares % stock.getLotSize() != 0)
+            return stock.getSymbol() + " trades in lots of " + stock.getLotSize() + " shares.";
+        return accountReason;
+    }
+
     private void refreshAllData() {
-        // Update market table
-        marketTableModel.setRowCount(0);
-        for (Stock stock : tradingEngine.getAllStocks()) {
-            marketTableModel.addRow(new Object[] {
-                    stock.getSymbol(),
-                    stock.getCompanyName(),
-                    priceFormat.format(stock.getCurrentPrice()),
-                    priceFormat.format(stock.getPriceChange()),
-                    percentFormat.format(stock.getChangePercent()),
-                    formatVolume(stock.getVolume()),
-                    formatMarketCap(stock.getMarketCap())
-            });
+        if (tradingEngine == null)
+            return; // still loading
+
+        // Update market table; only visible rows get formatted
+        String selectedSymbol = getSelectedMarketSymbol();
+        marketTableModel.refresh();
+        reselectMarketSymbol(selectedSymbol);
+
+        // Tables on hidden tabs are rebuilt when their tab is next selected
+        int shownTab = tabbedPane.getSelectedIndex();
+        if (shownTab == PORTFOLIO_TAB && portfolioTableModel != null) {
+            refreshPortfolio();
         }
+        if (shownTab == TRANSACTION_TAB && transactionTableModel != null) {
+            refreshTransactions();
+        }
+
+        // Update header info
+        cashBalanceLabel.setText(priceFormat.format(currentUser.getCashBalance()));
+        double portfolioValue = currentUser.getPortfolio().getTotalValue(tradingEngine);
+        portfolioValueLabel.setText(priceFormat.format(portfolioValue));
+
+        double totalPL = currentUser.getPortfolio().getTotalGainLoss(tradingEngine);
+        totalPLLabel.setText(priceFormat.format(totalPL));
+        totalPLLabel.setForeground(totalPL >= 0 ? PROFIT_COLOR : LOSS_COLOR);
 
-        // Update portfolio table
+        RiskAnalytics risk = tradingEngine.getRiskAnalytics();
+        varLabel.setText(priceFormat.format(risk.historicalVaR(currentUser, 0.95)));
+        varLabel.setToolTipText("One-tick VaR over the last " + risk.getWindow() + " ticks. Parametric: "
+                + priceFormat.format(risk.parametricVaR(currentUser, 0.95)));
+    }
+
+    private void refreshPortfolio() {
         portfolioTableModel.setRowCount(0);
         for (PortfolioHolding holding : currentUser.getPortfolio().getHoldings()) {
-            Stock stock = tradingEngine.getStock(holding.getSymbol());
-            double marketValue = holding.getShares() * stock.getCurrentPrice();
+            Stock stock = tradingEngine.getLastListing(holding.getSymbol());
+            double price = stock == null ? holding.getAverageCost() : stock.getCurrentPrice();
+            double marketValue = holding.getShares() * price;
             double gainLoss = marketValue - (holding.getShares() * holding.getAverageCost());
-            double gainLossPercent = ((stock.getCurrentPrice() - holding.getAverageCost()) / holding.getAverageCost());
+            double gainLossPercent = ((price - holding.getAverageCost()) / holding.getAverageCost());
 
             portfolioTableModel.addRow(new Object[] {
-                    stock.getSymbol(),
-                    stock.getCompanyName(),
+                    holding.getSymbol(),
+                    stock == null ? "" : stock.getCompanyName(),
                     holding.getShares(),
                     priceFormat.format(holding.getAverageCost()),
-                    priceFormat.format(stock.getCurrentPrice()),
+                    priceFormat.format(price),
                     priceFormat.format(marketValue),
                     priceFormat.format(gainLoss),
                     percentFormat.format(gainLossPercent)
             });
         }
 
-        // Update transaction table
+        TaxLotLedger lots = currentUser.getLotLedger();
+        double realizedPL = lots == null ? 0 : lots.getRealizedPnL();
+        realizedPLLabel.setText("Realized P/L: " + priceFormat.format(realizedPL));
+        realizedPLLabel.setForeground(realizedPL >= 0 ? PROFIT_COLOR : LOSS_COLOR);
+    }
+
+    private void refreshTransactions() {
+        if (transactionPageEnd >= 0)
+            return; // archived pages never change
+        List<Transaction> recent;
+        long archived;
+        synchronized (currentUser) {
+            recent = new ArrayList<>(currentUser.getTransactionHistory());
+            archived = tradingEngine.getArchivedTransactionCount(currentUser);
+        }
+        showTransactions(recent);
+        transactionPageLabel.setText(archived == 0 ? String.format("%,d fills", recent.size())
+                : String.format("Latest %,d of %,d fills, %,d archived", recent.size(), archived + recent.size(),
+                        archived));
+        olderTransactionsButton.setEnabled(archived > 0);
+        newerTransactionsButton.setEnabled(false);
+    }
+
+    /**
+     * Shows archived rows [end - TRANSACTION_PAGE_ROWS, end), read off the EDT.
+     */
+    private void showArchivedTransactions(long end) {
+        long start = Math.max(0, end - TRANSACTION_PAGE_ROWS);
+        User user = currentUser;
+        transactionPageEnd = end;
+        olderTransactionsButton.setEnabled(false);
+        newerTransactionsButton.setEnabled(false);
+        transactionPageLabel.setText("Reading archived fills…");
+        new SwingWorker<List<Transaction>, Void>() {
+            @Override
+            protected List<Transaction> doInBackground() throws IOException {
+                return tradingEngine.getArchivedTransactions(user, start, end);
+            }
+
+            @Override
+            protected void done() {
+                if (transactionPageEnd != end)
+                    return; // paged elsewhere meanwhile
+                try {
+                    showTransactions(get());
+                    transactionPageLabel.setText(String.format("Archived fills %,d–%,d of %,d", start + 1, end,
+                            tradingEngine.getArchivedTransactionCount(user)));
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Error reading archived history: " + cause.getMessage());
+                    transactionPageLabel.setText("Archived fills could not be read");
+                }
+                olderTransactionsButton.setEnabled(start > 0);
+                newerTransactionsButton.setEnabled(true);
+            }
+        }.execute();
+    }
+
+    private void showTransactions(List<Transaction> rows) {
         transactionTableModel.setRowCount(0);
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy HH:mm");
-        for (Transaction tx : currentUser.getTransactionHistory()) {
+        for (Transaction tx : rows) {
             transactionTableModel.addRow(new Object[] {
-                    sdf.format(tx.getTimestamp()),
+                    transactionDateFormat.format(tx.getTimestamp()),
                     tx.getType(),
                     tx.getSymbol(),
                     tx.getShares(),
@@ -595,15 +1091,6 @@ public class StockTradingPlatform extends JFrame {
                     "Completed"
             });
         }
-
-        // Update header info
-        cashBalanceLabel.setText(priceFormat.format(currentUser.getCashBalance()));
-        double portfolioValue = currentUser.getPortfolio().getTotalValue(tradingEngine);
-        portfolioValueLabel.setText(priceFormat.format(portfolioValue));
-
-        double totalPL = currentUser.getPortfolio().getTotalGainLoss(tradingEngine);
-        totalPLLabel.setText(priceFormat.format(totalPL));
-        totalPLLabel.setForeground(totalPL >= 0 ? PROFIT_COLOR : LOSS_COLOR);
     }
 
     private void startMarketUpdates() {
@@ -617,24 +1104,6 @@ public class StockTradingPlatform extends JFrame {
         }, 5000, 5000); // Update every 5 seconds
     }
 
-    private String formatVolume(long volume) {
-        if (volume >= 1000000) {
-            return String.format("%.2fM", volume / 1000000.0);
-        } else if (volume >= 1000) {
-            return String.format("%.2fK", volume / 1000.0);
-        }
-        return String.valueOf(volume);
-    }
-
-    private String formatMarketCap(double marketCap) {
-        if (marketCap >= 1000000000) {
-            return String.format("$%.2fB", marketCap / 1000000000.0);
-        } else if (marketCap >= 1000000) {
-            return String.format("$%.2fM", marketCap / 1000000.0);
-        }
-        return priceFormat.format(marketCap);
-    }
-
     public static void main(String[] args) {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -648,385 +1117,3 @@ public class StockTradingPlatform extends JFrame {
         });
     }
 }
-
-/**
- * Stock Class - Represents a stock with market data
- */
-class Stock implements Serializable {
-    private static final long serialVersionUID = 1L;
-
-    private String symbol;
-    private String companyName;
-    private double currentPrice;
-    private double openPrice;
-    private double previousClose;
-    private long volume;
-    private double marketCap;
-    private Random random;
-
-    public Stock(String symbol, String companyName, double initialPrice, double marketCap) {
-        this.symbol = symbol;
-        this.companyName = companyName;
-        this.currentPrice = initialPrice;
-        this.openPrice = initialPrice;
-        this.previousClose = initialPrice;
-        this.marketCap = marketCap;
-        this.volume = (long) (Math.random() * 10000000) + 1000000;
-        this.random = new Random();
-    }
-
-    public void updatePrice() {
-        // Simulate price movement (±2%)
-        double change = (random.nextDouble() - 0.5) * 0.04 * currentPrice;
-        currentPrice += change;
-        currentPrice = Math.max(1.0, currentPrice); // Minimum price $1
-        volume += (long) (random.nextInt(100000));
-    }
-
-    public double getPriceChange() {
-        return currentPrice - previousClose;
-    }
-
-    public double getChangePercent() {
-        return (currentPrice - previousClose) / previousClose;
-    }
-
-    // Getters
-    public String getSymbol() {
-        return symbol;
-    }
-
-    public String getCompanyName() {
-        return companyName;
-    }
-
-    public double getCurrentPrice() {
-        return currentPrice;
-    }
-
-    public double getOpenPrice() {
-        return openPrice;
-    }
-
-    public double getPreviousClose() {
-        return previousClose;
-    }
-
-    public long getVolume() {
-        return volume;
-    }
-
-    public double getMarketCap() {
-        return marketCap;
-    }
-}
-
-/**
- * Transaction Class - Represents a buy/sell transaction
- */
-class Transaction implements Serializable {
-    private static final long serialVersionUID = 1L;
-
-    private String transactionId;
-    private String symbol;
-    private String type; // BUY or SELL
-    private int shares;
-    private double price;
-    private double totalAmount;
-    private Date timestamp;
-
-    public Transaction(String symbol, String type, int shares, double price) {
-        this.transactionId = "TX" + System.currentTimeMillis();
-        this.symbol = symbol;
-        this.type = type;
-        this.shares = shares;
-        this.price = price;
-        this.totalAmount = shares * price;
-        this.timestamp = new Date();
-    }
-
-    // Getters
-    public String getTransactionId() {
-        return transactionId;
-    }
-
-    public String getSymbol() {
-        return symbol;
-    }
-
-    public String getType() {
-        return type;
-    }
-
-    public int getShares() {
-        return shares;
-    }
-
-    public double getPrice() {
-        return price;
-    }
-
-    public double getTotalAmount() {
-        return totalAmount;
-    }
-
-    public Date getTimestamp() {
-        return timestamp;
-    }
-}
-
-/**
- * PortfolioHolding - Represents a stock holding in portfolio
- */
-class PortfolioHolding implements Serializable {
-    private static final long serialVersionUID = 1L;
-
-    private String symbol;
-    private int shares;
-    private double averageCost;
-
-    public PortfolioHolding(String symbol, int shares, double cost) {
-        this.symbol = symbol;
-        this.shares = shares;
-        this.averageCost = cost;
-    }
-
-    public void addShares(int newShares, double price) {
-        double totalCost = (shares * averageCost) + (newShares * price);
-        shares += newShares;
-        averageCost = totalCost / shares;
-    }
-
-    public void removeShares(int sharesToSell) {
-        shares -= sharesToSell;
-    }
-
-    // Getters and Setters
-    public String getSymbol() {
-        return symbol;
-    }
-
-    public int getShares() {
-        return shares;
-    }
-
-    public double getAverageCost() {
-        return averageCost;
-    }
-}
-
-/**
- * Portfolio Class - Manages user's stock holdings
- */
-class Portfolio implements Serializable {
-    private static final long serialVersionUID = 1L;
-
-    private Map<String, PortfolioHolding> holdings;
-
-    public Portfolio() {
-        holdings = new HashMap<>();
-    }
-
-    public void addHolding(String symbol, int shares, double price) {
-        if (holdings.containsKey(symbol)) {
-            holdings.get(symbol).addShares(shares, price);
-        } else {
-            holdings.put(symbol, new PortfolioHolding(symbol, shares, price));
-        }
-    }
-
-    public boolean removeHolding(String symbol, int shares) {
-        if (!holdings.containsKey(symbol))
-            return false;
-
-        PortfolioHolding holding = holdings.get(symbol);
-        if (holding.getShares() < shares)
-            return false;
-
-        holding.removeShares(shares);
-        if (holding.getShares() == 0) {
-            holdings.remove(symbol);
-        }
-        return true;
-    }
-
-    public int getShares(String symbol) {
-        return holdings.containsKey(symbol) ? holdings.get(symbol).getShares() : 0;
-    }
-
-    public double getTotalValue(TradingEngine engine) {
-        double total = 0;
-        for (PortfolioHolding holding : holdings.values()) {
-            Stock stock = engine.getStock(holding.getSymbol());
-            total += holding.getShares() * stock.getCurrentPrice();
-        }
-        return total;
-    }
-
-    public double getTotalGainLoss(TradingEngine engine) {
-        double totalGainLoss = 0;
-        for (PortfolioHolding holding : holdings.values()) {
-            Stock stock = engine.getStock(holding.getSymbol());
-            double marketValue = holding.getShares() * stock.getCurrentPrice();
-            double costBasis = holding.getShares() * holding.getAverageCost();
-            totalGainLoss += (marketValue - costBasis);
-        }
-        return totalGainLoss;
-    }
-
-    public List<PortfolioHolding> getHoldings() {
-        return new ArrayList<>(holdings.values());
-    }
-}
-
-/**
- * User Class - Represents a trading platform user
- */
-class User implements Serializable {
-    private static final long serialVersionUID = 1L;
-
-    private String userId;
-    private String name;
-    private double cashBalance;
-    private Portfolio portfolio;
-    private List<Transaction> transactionHistory;
-
-    public User(String userId, String name, double initialBalance) {
-        this.userId = userId;
-        this.name = name;
-        this.cashBalance = initialBalance;
-        this.portfolio = new Portfolio();
-        this.transactionHistory = new ArrayList<>();
-    }
-
-    public boolean buyStock(String symbol, int shares, double price) {
-        double totalCost = shares * price;
-        if (cashBalance < totalCost)
-            return false;
-
-        cashBalance -= totalCost;
-        portfolio.addHolding(symbol, shares, price);
-        transactionHistory.add(new Transaction(symbol, "BUY", shares, price));
-        return true;
-    }
-
-    public boolean sellStock(String symbol, int shares, double price) {
-        if (portfolio.getShares(symbol) < shares)
-            return false;
-
-        double totalValue = shares * price;
-        cashBalance += totalValue;
-        portfolio.removeHolding(symbol, shares);
-        transactionHistory.add(new Transaction(symbol, "SELL", shares, price));
-        return true;
-    }
-
-    // Getters
-    public String getUserId() {
-        return userId;
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    public double getCashBalance() {
-        return cashBalance;
-    }
-
-    public Portfolio getPortfolio() {
-        return portfolio;
-    }
-
-    public List<Transaction> getTransactionHistory() {
-        return transactionHistory;
-    }
-}
-
-/**
- * TradingEngine - Main engine managing stocks and transactions
- */
-class TradingEngine {
-    private Map<String, Stock> stocks;
-    private User currentUser;
-    private static final String DATA_FILE = "trading_data.dat";
-
-    public TradingEngine() {
-        stocks = new HashMap<>();
-        initializeStocks();
-        loadData();
-    }
-
-    private void initializeStocks() {
-        // Major tech stocks
-        stocks.put("AAPL", new Stock("AAPL", "Apple Inc.", 178.50, 2800000000000.0));
-        stocks.put("GOOGL", new Stock("GOOGL", "Alphabet Inc.", 140.25, 1750000000000.0));
-        stocks.put("MSFT", new Stock("MSFT", "Microsoft Corp.", 380.75, 2850000000000.0));
-        stocks.put("AMZN", new Stock("AMZN", "Amazon.com Inc.", 145.80, 1500000000000.0));
-        stocks.put("TSLA", new Stock("TSLA", "Tesla Inc.", 242.50, 770000000000.0));
-        stocks.put("META", new Stock("META", "Meta Platforms", 325.60, 850000000000.0));
-        stocks.put("NVDA", new Stock("NVDA", "NVIDIA Corp.", 485.20, 1200000000000.0));
-        stocks.put("NFLX", new Stock("NFLX", "Netflix Inc.", 440.90, 195000000000.0));
-
-        // Other popular stocks
-        stocks.put("DIS", new Stock("DIS", "Walt Disney Co.", 95.40, 175000000000.0));
-        stocks.put("BA", new Stock("BA", "Boeing Co.", 210.30, 130000000000.0));
-        stocks.put("INTC", new Stock("INTC", "Intel Corp.", 45.20, 185000000000.0));
-        stocks.put("AMD", new Stock("AMD", "AMD Inc.", 120.75, 195000000000.0));
-    }
-
-    public void updateMarketPrices() {
-        for (Stock stock : stocks.values()) {
-            stock.updatePrice();
-        }
-        saveData();
-    }
-
-    public boolean buyStock(String symbol, int shares) {
-        Stock stock = stocks.get(symbol);
-        if (stock == null || currentUser == null)
-            return false;
-        return currentUser.buyStock(symbol, shares, stock.getCurrentPrice());
-    }
-
-    public boolean sellStock(String symbol, int shares) {
-        Stock stock = stocks.get(symbol);
-        if (stock == null || currentUser == null)
-            return false;
-        return currentUser.sellStock(symbol, shares, stock.getCurrentPrice());
-    }
-
-    public Stock getStock(String symbol) {
-        return stocks.get(symbol);
-    }
-
-    public List<Stock> getAllStocks() {
-        return new ArrayList<>(stocks.values());
-    }
-
-    public void setCurrentUser(User user) {
-        this.currentUser = user;
-    }
-
-    // Data persistence
-    private void saveData() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(stocks);
-            oos.writeObject(currentUser);
-        } catch (Exception e) {
-            System.err.println("Error saving data: " + e.getMessage());
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    private void loadData() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DATA_FILE))) {
-            stocks = (Map<String, Stock>) ois.readObject();
-            currentUser = (User) ois.readObject();
-        } catch (FileNotFoundException e) {
-            // File doesn't exist yet
-        } catch (Exception e) {
-            System.err.println("Error loading data: " + e.getMessage());
-        }
-    }
-}
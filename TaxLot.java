@@ -0,0 +1,32 @@
+/**
+ * TaxLot - Read-only view of one open lot
+ */
+class TaxLot {
+    private final long lotId;
+    private final long openTime;
+    private final int shares;
+    private final double cost;
+
+    TaxLot(long lotId, long openTime, int shares, double cost) {
+        this.lotId = lotId;
+        this.openTime = openTime;
+        this.shares = shares;
+        this.cost = cost;
+    }
+
+    public long getLotId() {
+        return lotId;
+    }
+
+    public long getOpenTime() {
+        return openTime;
+    }
+
+    public int getShares() {
+        return shares;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+}
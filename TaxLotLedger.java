@@ -0,0 +1,109 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * TaxLotLedger - Per-account tax lots with realized and unrealized P&L
+ */
+class TaxLotLedger implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Map<String, LotBook> books;
+    private LotMethod defaultMethod;
+    private long nextLotId;
+    private double realizedPnL;
+
+    public TaxLotLedger() {
+        books = new HashMap<>();
+        defaultMethod = LotMethod.FIFO;
+        nextLotId = 1;
+    }
+
+    public long openLot(String symbol, int shares, double price, long openTime) {
+        long lotId = nextLotId++;
+        books.computeIfAbsent(symbol, LotBook::new).open(lotId, openTime, shares, price);
+        return lotId;
+    }
+
+    /**
+     * Closes shares of a symbol and returns the realized P&L, or NaN if the
+     * lots cannot cover the sale.
+     */
+    public double closeLots(String symbol, int shares, double price, LotMethod method, long lotId) {
+        LotBook book = books.get(symbol);
+        if (book == null)
+            return Double.NaN;
+        double realized = book.close(shares, price, method == null ? defaultMethod : method, lotId);
+        if (!Double.isNaN(realized)) {
+            realizedPnL += realized;
+        }
+        return realized;
+    }
+
+    public boolean canClose(String symbol, int shares, LotMethod method, long lotId) {
+        LotBook book = books.get(symbol);
+        return book != null && book.canClose(shares, method == null ? defaultMethod : method, lotId);
+    }
+
+    /**
+     * Replays fills, oldest first, into a fresh ledger. Lot ids are assigned
+     * in fill order, so specific-lot sells resolve to the same lots again.
+     */
+    public static TaxLotLedger rebuild(Iterable<Transaction> fills) {
+        TaxLotLedger ledger = new TaxLotLedger();
+        for (Transaction tx : fills) {
+            ledger.apply(tx);
+        }
+        return ledger;
+    }
+
+    void apply(Transaction tx) {
+        if ("BUY".equals(tx.getType())) {
+            openLot(tx.getSymbol(), tx.getShares(), tx.getPrice(), tx.getTimestamp().getTime());
+        } else if ("SELL".equals(tx.getType())) {
+            closeLots(tx.getSymbol(), tx.getShares(), tx.getPrice(), tx.getLotMethod(), tx.getLotId());
+        }
+    }
+
+    public double getRealizedPnL() {
+        return realizedPnL;
+    }
+
+    public double getRealizedPnL(String symbol) {
+        LotBook book = books.get(symbol);
+        return book == null ? 0 : book.getRealizedPnL();
+    }
+
+    public double getUnrealizedPnL(TradingEngine engine) {
+        double total = 0;
+        for (LotBook book : books.values()) {
+            Stock stock = engine.getLastListing(book.getSymbol());
+            if (stock != null) {
+                total += book.getUnrealizedPnL(stock.getCurrentPrice());
+            }
+        }
+        return total;
+    }
+
+    public LotBook getBook(String symbol) {
+        return books.get(symbol);
+    }
+
+    public LotMethod getDefaultMethod() {
+        return defaultMethod;
+    }
+
+    public void setDefaultMethod(LotMethod defaultMethod) {
+        this.defaultMethod = defaultMethod;
+    }
+
+    TaxLotLedger copy() {
+        TaxLotLedger copy = new TaxLotLedger();
+        for (Map.Entry<String, LotBook> entry : books.entrySet()) {
+            copy.books.put(entry.getKey(), entry.getValue().copy());
+        }
+        copy.defaultMethod = defaultMethod;
+        copy.nextLotId = nextLotId;
+        copy.realizedPnL = realizedPnL;
+        return copy;
+    }
+}
@@ -0,0 +1,1077 @@
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * TradingEngine - Main engine managing stocks and transactions
+ */
+class TradingEngine {
+    private final Map<String, Stock> stocks = new ConcurrentHashMap<>(); // lookups; each stock is owned by a shard
+    private final Map<String, Stock> delisted = new ConcurrentHashMap<>(); // last listing, so holdings keep a price
+    private volatile User currentUser;
+    private final Map<String, TransactionArchive> archives = new ConcurrentHashMap<>();
+    private final java.util.concurrent.atomic.AtomicLong universeVersion =
+            new java.util.concurrent.atomic.AtomicLong(); // bumped whenever the set of stocks changes
+    private final Map<String, User> accounts = new LinkedHashMap<>(); // guarded by itself
+    private RiskAnalytics riskAnalytics;
+    private final MarketScanner marketScanner = new MarketScanner();
+    private final DepthFeed depthFeed;
+    private PointInTimeStore pointInTime = new PointInTimeStore();
+    private final String dataFile;
+    private final String archiveDir;
+    private SnapshotWriter snapshotWriter;
+    private final List<EngineListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long snapshotIntervalMillis = DEFAULT_SNAPSHOT_INTERVAL_MILLIS;
+    private long lastSnapshotMillis;
+    private Map<User, User> snapshotCopies = new IdentityHashMap<>(); // last copy of each account, under tickLock
+
+    // Symbol partitions; ticks and quiescing are serialized by tickLock
+    private final EngineShard[] shards;
+    private final ReentrantLock tickLock = new ReentrantLock();
+    private Thread quiescedBy;
+    private volatile boolean stopped;
+    private ReferenceDataLoader universeLoader;
+    private long startupMillis;
+    private volatile long tickVersion; // bumped under tickLock after every tick
+    // Stocks are changed in place; see getMarketWrites
+    private final java.util.concurrent.atomic.AtomicLong marketWritesStarted =
+            new java.util.concurrent.atomic.AtomicLong();
+    private final java.util.concurrent.atomic.AtomicLong marketWritesFinished =
+            new java.util.concurrent.atomic.AtomicLong();
+
+    // Trading session; without a schedule the session stays open until closed
+    private volatile SessionState sessionState = SessionState.OPEN;
+    private volatile long sessionOpenedMillis = System.currentTimeMillis();
+    private volatile SessionSchedule sessionSchedule = SessionSchedule.fromSystemProperties();
+    private volatile long endOfDayWindowMillis = EndOfDayBatch.DEFAULT_WINDOW_MILLIS;
+    private volatile File statementDir;
+    private CompletableFuture<EndOfDayReport> lastEndOfDay;
+
+    static final String DATA_FILE = "trading_data.dat";
+    static final String ARCHIVE_DIR = "trading_archive";
+    static final String UNIVERSE_PROPERTY = "trading.universe";
+    static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 5000;
+
+    // Recent history kept in memory; once it doubles, the older half is archived
+    static final int RECENT_HISTORY_LIMIT = 500;
+
+    public TradingEngine() {
+        this(DATA_FILE, ARCHIVE_DIR);
+    }
+
+    public TradingEngine(String dataFile, String archiveDir) {
+        this(dataFile, archiveDir, defaultShardCount());
+    }
+
+    public TradingEngine(String dataFile, String archiveDir, int shardCount) {
+        this(dataFile, archiveDir, shardCount, System.getProperty(UNIVERSE_PROPERTY));
+    }
+
+    /**
+     * Creates an engine persisting to the given data file and archive
+     * directory, with the symbol universe split across the given number of
+     * shards. Any path may be null: without a data file nothing is loaded
+     * or saved, without an archive directory history stays in memory, and
+     * without a universe file the built-in symbols are listed.
+     */
+    public TradingEngine(String dataFile, String archiveDir, int shardCount, String universeFile) {
+        long start = System.nanoTime();
+        if (shardCount < 1)
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        this.dataFile = dataFile;
+        this.archiveDir = archiveDir;
+        shards = new EngineShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new EngineShard(i);
+        }
+        riskAnalytics = new RiskAnalytics(RiskAnalytics.DEFAULT_WINDOW);
+        depthFeed = new DepthFeed(this);
+        listeners.add(depthFeed);
+        initializeStocks();
+        if (dataFile != null) {
+            snapshotWriter = new SnapshotWriter(new File(dataFile), archives.values());
+            loadData();
+            loadPointInTime();
+            pointInTime.setJournaling(true);
+        }
+        if (universeFile != null) {
+            loadUniverse(Paths.get(universeFile));
+        }
+        assignShards();
+        if (currentUser != null) {
+            registerAccount(currentUser);
+        }
+        for (User account : getAccounts()) {
+            retireForeignArchive(account);
+            if (account.getLotLedger() == null) {
+                account.setLotLedger(rebuildLotLedger(account));
+            }
+            rollHistory(account);
+            pointInTime.track(account);
+        }
+        if (archiveDir != null) {
+            statementDir = new File(archiveDir + "_statements");
+        }
+        if (sessionSchedule != null) {
+            sessionState = sessionSchedule.stateAt(System.currentTimeMillis()); // no batch for a session not traded
+        }
+        startupMillis = (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Shard count from the trading.shards system property, else one per core.
+     */
+    static int defaultShardCount() {
+        return Math.max(1, Integer.getInteger("trading.shards", Runtime.getRuntime().availableProcessors()));
+    }
+
+    private void initializeStocks() {
+        // Major tech stocks
+        stocks.put("AAPL", new Stock("AAPL", "Apple Inc.", 178.50, 2800000000000.0));
+        stocks.put("GOOGL", new Stock("GOOGL", "Alphabet Inc.", 140.25, 1750000000000.0));
+        stocks.put("MSFT", new Stock("MSFT", "Microsoft Corp.", 380.75, 2850000000000.0));
+        stocks.put("AMZN", new Stock("AMZN", "Amazon.com Inc.", 145.80, 1500000000000.0));
+        stocks.put("TSLA", new Stock("TSLA", "Tesla Inc.", 242.50, 770000000000.0));
+        stocks.put("META", new Stock("META", "Meta Platforms", 325.60, 850000000000.0));
+        stocks.put("NVDA", new Stock("NVDA", "NVIDIA Corp.", 485.20, 1200000000000.0));
+        stocks.put("NFLX", new Stock("NFLX", "Netflix Inc.", 440.90, 195000000000.0));
+
+        // Other popular stocks
+        stocks.put("DIS", new Stock("DIS", "Walt Disney Co.", 95.40, 175000000000.0));
+        stocks.put("BA", new Stock("BA", "Boeing Co.", 210.30, 130000000000.0));
+        stocks.put("INTC", new Stock("INTC", "Intel Corp.", 45.20, 185000000000.0));
+        stocks.put("AMD", new Stock("AMD", "AMD Inc.", 120.75, 195000000000.0));
+    }
+
+    /**
+     * Replaces the listed symbols with a reference data universe. Symbols
+     * that were already listed (e.g. restored from the data file) keep their
+     * live price and take the new reference fields.
+     */
+    private void loadUniverse(Path file) {
+        ReferenceDataLoader loader = ReferenceDataLoader.universe();
+        List<ReferenceRecord> records;
+        try {
+            records = loader.load(file);
+        } catch (IOException e) {
+            System.err.println("Error loading universe: " + e.getMessage());
+            return;
+        }
+        Map<String, Stock> merged = new HashMap<>(records.size() * 2);
+        for (ReferenceRecord record : records) {
+            Stock listed = stocks.get(record.symbol);
+            merged.put(record.symbol, listed == null ? record.toStock() : listed.withReferenceData(record.withoutPrice()));
+            delisted.remove(record.symbol);
+        }
+        for (Stock listed : stocks.values()) {
+            if (!merged.containsKey(listed.getSymbol())) {
+                delisted.put(listed.getSymbol(), listed);
+            }
+        }
+        stocks.clear();
+        stocks.putAll(merged);
+        universeVersion.incrementAndGet();
+        universeLoader = loader;
+    }
+
+    /**
+     * Applies an intraday delta file (ADD / DELIST / CHANGE rows) while the
+     * market keeps ticking; see applyUniverseChanges.
+     */
+    public int applyUniverseDeltas(Path file) throws IOException {
+        return applyUniverseChanges(ReferenceDataLoader.deltas().load(file));
+    }
+
+    /**
+     * Lists, delists or changes symbols without pausing the tick loop: each
+     * change is queued to the owning shard, which applies it between ticks
+     * and orders in file order. Returns how many changes applied; adds of
+     * listed symbols and changes to unlisted ones are skipped.
+     */
+    public int applyUniverseChanges(List<ReferenceRecord> changes) {
+        Map<EngineShard, List<ReferenceRecord>> byShard = new LinkedHashMap<>();
+        for (ReferenceRecord change : changes) {
+            byShard.computeIfAbsent(shardFor(change.symbol), k -> new ArrayList<>()).add(change);
+        }
+        java.util.concurrent.atomic.AtomicInteger applied = new java.util.concurrent.atomic.AtomicInteger();
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+        marketWritesStarted.incrementAndGet();
+        try {
+            for (Map.Entry<EngineShard, List<ReferenceRecord>> entry : byShard.entrySet()) {
+                EngineShard shard = entry.getKey();
+                updates.add(shard.submit(() -> {
+                    for (ReferenceRecord change : entry.getValue()) {
+                        if (applyUniverseChange(shard, change)) {
+                            applied.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            await(CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[0])));
+            if (applied.get() > 0) {
+                universeVersion.incrementAndGet();
+            }
+        } finally {
+            marketWritesFinished.incrementAndGet();
+        }
+        return applied.get();
+    }
+
+    // Runs on the shard owning the symbol
+    private boolean applyUniverseChange(EngineShard shard, ReferenceRecord change) {
+        Map<String, Stock> owned = shard.stocks();
+        Stock listed = owned.get(change.symbol);
+        Stock updated;
+        switch (change.action) {
+            case ADD:
+                if (listed != null)
+                    return false;
+                updated = change.toStock();
+                delisted.remove(change.symbol);
+                break;
+            case CHANGE:
+                if (listed == null)
+                    return false;
+                updated = listed.withReferenceData(change);
+                break;
+            default:
+                if (listed == null)
+                    return false;
+                owned.remove(change.symbol);
+                stocks.remove(change.symbol);
+                delisted.put(change.symbol, listed);
+                return true;
+        }
+        owned.put(change.symbol, updated);
+        stocks.put(change.symbol, updated);
+        return true;
+    }
+
+    /**
+     * Parse statistics of the universe file, or null when none was loaded.
+     */
+    public ReferenceDataLoader getUniverseLoader() {
+        return universeLoader;
+    }
+
+    /**
+     * Time the constructor took to load all state, in milliseconds.
+     */
+    public long getStartupMillis() {
+        return startupMillis;
+    }
+
+    // Shards
+
+    EngineShard shardFor(String symbol) {
+        return shards[Math.floorMod(symbol.hashCode(), shards.length)];
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public List<EngineShard> getShards() {
+        return Collections.unmodifiableList(Arrays.asList(shards));
+    }
+
+    /**
+     * Hands every stock to its owning shard; only called before the shards
+     * start or while they are quiesced.
+     */
+    private void assignShards() {
+        for (EngineShard shard : shards) {
+            shard.stocks().clear();
+        }
+        for (Stock stock : stocks.values()) {
+            shardFor(stock.getSymbol()).stocks().put(stock.getSymbol(), stock);
+        }
+    }
+
+    /**
+     * Runs an action with every shard parked between tasks and no tick in
+     * progress, so it sees (and may change) a consistent engine. Nested calls
+     * on the quiescing thread run directly.
+     */
+    public <T> T quiesce(Supplier<T> action) {
+        for (EngineShard shard : shards) {
+            if (shard.isShardThread())
+                throw new IllegalStateException("Cannot quiesce from shard " + shard.getId());
+        }
+        tickLock.lock();
+        try {
+            if (quiescedBy == Thread.currentThread() || stopped)
+                return action.get();
+            CountDownLatch parked = new CountDownLatch(shards.length);
+            CountDownLatch release = new CountDownLatch(1);
+            for (EngineShard shard : shards) {
+                shard.execute(() -> {
+                    parked.countDown();
+                    awaitUninterruptibly(release);
+                });
+            }
+            awaitUninterruptibly(parked);
+            quiescedBy = Thread.currentThread();
+            try {
+                return action.get();
+            } finally {
+                quiescedBy = null;
+                release.countDown();
+            }
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    // Market data and orders
+
+    /**
+     * Moves every price once, all shards in parallel.
+     */
+    public void updateMarketPrices() {
+        tickLock.lock();
+        try {
+            SessionSchedule schedule = sessionSchedule;
+            if (schedule != null) {
+                SessionState due = schedule.stateAt(System.currentTimeMillis());
+                if (due == SessionState.OPEN && sessionState == SessionState.CLOSED) {
+                    openSession();
+                } else if (due == SessionState.CLOSED && sessionState == SessionState.OPEN) {
+                    closeSession();
+                }
+            }
+            if (sessionState == SessionState.CLOSED)
+                return; // prices hold at the close
+            marketWritesStarted.incrementAndGet();
+            try {
+                CompletableFuture<?>[] ticks = new CompletableFuture<?>[shards.length];
+                for (int i = 0; i < shards.length; i++) {
+                    ticks[i] = shards[i].submitTick();
+                }
+                await(CompletableFuture.allOf(ticks));
+                tickCompleted();
+            } finally {
+                marketWritesFinished.incrementAndGet();
+            }
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    private void tickCompleted() {
+        tickVersion++;
+        riskAnalytics.onTick(stocks.values(), universeVersion.get());
+        marketScanner.onTick(stocks.values());
+        for (EngineListener listener : listeners) {
+            listener.onTick(stocks.values());
+        }
+        if (pointInTime.onTick(stocks.values(), getAccounts(), System.currentTimeMillis())) {
+            savePointInTime();
+        }
+        maybeSnapshot();
+    }
+
+    public boolean buyStock(String symbol, int shares) {
+        User user = currentUser;
+        return user != null && await(submitBuy(user, symbol, shares));
+    }
+
+    public boolean sellStock(String symbol, int shares) {
+        return sellStock(symbol, shares, null, 0);
+    }
+
+    public boolean sellStock(String symbol, int shares, LotMethod method, long lotId) {
+        User user = currentUser;
+        return user != null && await(submitSell(user, symbol, shares, method, lotId));
+    }
+
+    /**
+     * Queues a buy on the shard owning the symbol. The account lock makes the
+     * buying-power check and the fill atomic against orders on other shards.
+     */
+    public CompletableFuture<Boolean> submitBuy(User user, String symbol, int shares) {
+        EngineShard shard = shardFor(symbol);
+        return shard.submitOrder(() -> {
+            Stock stock = shard.stocks().get(symbol);
+            if (stock == null || shares % stock.getLotSize() != 0 || sessionState != SessionState.OPEN)
+                return false;
+            synchronized (user) {
+                if (!user.buyStock(symbol, shares, stock.getCurrentPrice()))
+                    return false;
+                fillCompleted(user, user.getLastTransaction());
+                return true;
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> submitSell(User user, String symbol, int shares, LotMethod method,
+            long lotId) {
+        EngineShard shard = shardFor(symbol);
+        return shard.submitOrder(() -> {
+            Stock stock = shard.stocks().get(symbol);
+            if (stock == null || shares % stock.getLotSize() != 0 || sessionState != SessionState.OPEN)
+                return false;
+            synchronized (user) {
+                if (!user.sellStock(symbol, shares, stock.getCurrentPrice(), method, lotId))
+                    return false;
+                fillCompleted(user, user.getLastTransaction());
+                return true;
+            }
+        });
+    }
+
+    public Stock getStock(String symbol) {
+        return stocks.get(symbol);
+    }
+
+    /**
+     * The listed stock, else the last listing of a delisted one, so that
+     * positions in it can still be shown and valued; null for a symbol
+     * never listed since startup.
+     */
+    public Stock getLastListing(String symbol) {
+        Stock stock = stocks.get(symbol);
+        return stock != null ? stock : delisted.get(symbol);
+    }
+
+    /**
+     * Price for valuing a position: the last listing's price, else the
+     * given fallback (such as the position's average cost).
+     */
+    public double getLastPrice(String symbol, double fallback) {
+        Stock stock = getLastListing(symbol);
+        return stock == null ? fallback : stock.getCurrentPrice();
+    }
+
+    public List<Stock> getAllStocks() {
+        return new ArrayList<>(stocks.values());
+    }
+
+    public int getStockCount() {
+        return stocks.size();
+    }
+
+    public long getUniverseVersion() {
+        return universeVersion.get();
+    }
+
+    /**
+     * Counts completed in-place changes to the listed stocks (ticks, session
+     * opens and universe changes), or returns -1 while one is being applied.
+     * A reader that gets the same count before and after reading several
+     * stocks saw them all between two changes, and the tick and universe
+     * versions it read in between belong to what it saw.
+     */
+    public long getMarketWrites() {
+        long started = marketWritesStarted.get();
+        return marketWritesFinished.get() == started ? started : -1;
+    }
+
+    /**
+     * Counts completed ticks and session opens, so readers can tell whether
+     * quotes may have changed since they last looked.
+     */
+    public long getTickVersion() {
+        return tickVersion;
+    }
+
+    public void setCurrentUser(User user) {
+        this.currentUser = user;
+        registerAccount(user);
+    }
+
+    // Called on a shard thread with the account lock held
+    private void fillCompleted(User user, Transaction tx) {
+        pointInTime.onFill(user, tx);
+        for (EngineListener listener : listeners) {
+            listener.onFill(user, tx);
+        }
+        rollHistory(user);
+    }
+
+    public void addListener(EngineListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(EngineListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Accounts
+
+    /**
+     * Adds an account, or replaces the one with the same id. Runs under
+     * tickLock, so a quiesced reader such as a standby bootstrap sees the
+     * account and its event together.
+     */
+    public void registerAccount(User user) {
+        tickLock.lock();
+        try {
+            User previous;
+            synchronized (accounts) {
+                previous = accounts.put(user.getUserId(), user);
+            }
+            if (previous != user) {
+                retireForeignArchive(user);
+                pointInTime.track(user);
+                for (EngineListener listener : listeners) {
+                    listener.onAccountRegistered(user);
+                }
+            }
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    public User getAccount(String userId) {
+        synchronized (accounts) {
+            return accounts.get(userId);
+        }
+    }
+
+    public List<User> getAccounts() {
+        synchronized (accounts) {
+            return new ArrayList<>(accounts.values());
+        }
+    }
+
+    public RiskAnalytics getRiskAnalytics() {
+        return riskAnalytics;
+    }
+
+    public MarketScanner getMarketScanner() {
+        return marketScanner;
+    }
+
+    public DepthFeed getDepthFeed() {
+        return depthFeed;
+    }
+
+    // Transaction history archive
+    public TransactionArchive getTransactionArchive(User user) {
+        if (archiveDir == null)
+            return null;
+        return archives.computeIfAbsent(user.getUserId(),
+                id -> new TransactionArchive(new File(archiveDir, id)));
+    }
+
+    /**
+     * Streams a user's full history in [fromMillis, toMillis], archived rows
+     * first and then the in-memory recent ones, without loading the archive.
+     * The recent rows and the archive length are read together under the
+     * account lock, so rows archived during the scan are seen exactly once.
+     */
+    public void scanTransactionHistory(User user, long fromMillis, long toMillis,
+            java.util.function.Consumer<Transaction> action) throws IOException {
+        TransactionArchive archive = getTransactionArchive(user);
+        List<Transaction> recent;
+        long archived;
+        synchronized (user) {
+            recent = new ArrayList<>(user.getTransactionHistory());
+            archived = archive == null ? 0 : archive.getRowCount();
+        }
+        if (archive != null) {
+            archive.forEach(fromMillis, toMillis, archived, action);
+        }
+        for (Transaction tx : recent) {
+            long ts = tx.getTimestamp().getTime();
+            if (ts >= fromMillis && ts <= toMillis) {
+                action.accept(tx);
+            }
+        }
+    }
+
+    /**
+     * How many of a user's rows are archived; they all precede the recent
+     * in-memory history.
+     */
+    public long getArchivedTransactionCount(User user) {
+        TransactionArchive archive = getTransactionArchive(user);
+        return archive == null ? 0 : archive.getRowCount();
+    }
+
+    /**
+     * Archived rows [fromRow, toRow) of a user's history, oldest first, for
+     * paging back past the recent rows. Archived rows never move, so a page
+     * reads the same whenever it is fetched.
+     */
+    public List<Transaction> getArchivedTransactions(User user, long fromRow, long toRow) throws IOException {
+        List<Transaction> rows = new ArrayList<>();
+        TransactionArchive archive = getTransactionArchive(user);
+        if (archive != null) {
+            archive.scanRows(fromRow, toRow, row -> rows.add(row.toTransaction()));
+        }
+        return rows;
+    }
+
+    /**
+     * Reconstructs an account as it stood at the given time, from the
+     * nearest checkpoint plus the fills between it and that time. Returns
+     * null for an account the engine does not track.
+     */
+    public AccountState valueAsOf(User user, long asOfMillis) throws IOException {
+        return pointInTime.reconstruct(user, asOfMillis, this::scanTransactionHistory, this);
+    }
+
+    /**
+     * Reconstructs many accounts at the same time in parallel. Accounts that
+     * are not tracked or whose history cannot be read are left out.
+     */
+    public Map<String, AccountState> valuesAsOf(Collection<User> users, long asOfMillis) {
+        Map<String, AccountState> result = new ConcurrentHashMap<>();
+        users.parallelStream().forEach(user -> {
+            try {
+                AccountState state = valueAsOf(user, asOfMillis);
+                if (state != null) {
+                    result.put(user.getUserId(), state);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reconstructing " + user.getUserId() + ": " + e.getMessage());
+            }
+        });
+        return result;
+    }
+
+    public PointInTimeStore getPointInTimeStore() {
+        return pointInTime;
+    }
+
+    private File pointInTimeFile() {
+        return new File(dataFile + ".pit");
+    }
+
+    private void loadPointInTime() {
+        File file = pointInTimeFile();
+        if (!file.exists())
+            return;
+        try {
+            pointInTime = PointInTimeStore.load(file);
+        } catch (IOException e) {
+            System.err.println("Error loading checkpoints: " + e.getMessage());
+        }
+    }
+
+    // Called with tickLock held after a checkpoint round; the IO and any
+    // compaction run on the snapshot thread
+    private void savePointInTime() {
+        if (snapshotWriter == null)
+            return;
+        PointInTimeStore store = pointInTime;
+        File file = pointInTimeFile();
+        snapshotWriter.execute(() -> {
+            try {
+                store.persist(file);
+            } catch (IOException e) {
+                System.err.println("Error saving checkpoints: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Rebuilds a user's tax lots by replaying the archived and recent fills.
+     */
+    public TaxLotLedger rebuildLotLedger(User user) {
+        TaxLotLedger ledger = new TaxLotLedger();
+        try {
+            scanTransactionHistory(user, Long.MIN_VALUE, Long.MAX_VALUE, ledger::apply);
+        } catch (IOException e) {
+            System.err.println("Error rebuilding tax lots: " + e.getMessage());
+        }
+        return ledger;
+    }
+
+    /**
+     * Moves aside an archive that cannot be this account's. Rolling always
+     * leaves RECENT_HISTORY_LIMIT rows in memory, so an account with fewer
+     * has never archived any: rows under its id were left by an earlier
+     * account with the same id, such as one whose data file was lost, and
+     * would otherwise be read back as this account's fills.
+     */
+    private void retireForeignArchive(User user) {
+        if (archiveDir == null || user.getTransactionHistory().size() >= RECENT_HISTORY_LIMIT)
+            return;
+        TransactionArchive archive = getTransactionArchive(user);
+        if (archive.getRowCount() == 0)
+            return;
+        archives.remove(user.getUserId(), archive);
+        File retired = new File(archiveDir + "_retired", user.getUserId() + "-" + System.currentTimeMillis());
+        if (retired.getParentFile().isDirectory() || retired.getParentFile().mkdirs()) {
+            if (archive.getDirectory().renameTo(retired)) {
+                System.err.println("Archived history of an earlier account " + user.getUserId() + " moved to "
+                        + retired);
+                return;
+            }
+        }
+        System.err.println("Error moving aside archived history of an earlier account " + user.getUserId()
+                + " in " + archive.getDirectory());
+    }
+
+    /**
+     * Moves the older half of a long history into the archive. The rows stay
+     * visible to scans while the segment is written on the snapshot thread,
+     * which writes it before any snapshot that no longer holds them.
+     */
+    private void rollHistory(User user) {
+        TransactionArchive archive = getTransactionArchive(user);
+        if (archive == null || user.getTransactionHistory().size() < RECENT_HISTORY_LIMIT * 2)
+            return;
+        List<Transaction> oldest = user.drainOldestTransactions(RECENT_HISTORY_LIMIT);
+        archive.appendAsync(oldest, snapshotWriter != null ? snapshotWriter::execute : Runnable::run);
+    }
+
+    // Replication: state changes received from a primary engine
+
+    /**
+     * Replaces all state with a snapshot taken on the primary.
+     */
+    public void restoreSnapshot(EngineSnapshot snapshot) {
+        quiesce(() -> {
+            marketWritesStarted.incrementAndGet();
+            try {
+                stocks.clear();
+                stocks.putAll(snapshot.stocks);
+                delisted.keySet().removeAll(stocks.keySet());
+                assignShards();
+                universeVersion.incrementAndGet();
+            } finally {
+                marketWritesFinished.incrementAndGet();
+            }
+            synchronized (accounts) {
+                accounts.clear();
+                accounts.putAll(snapshot.accounts);
+                if (snapshot.currentUser != null) {
+                    accounts.putIfAbsent(snapshot.currentUser.getUserId(), snapshot.currentUser);
+                }
+            }
+            currentUser = snapshot.currentUser;
+            for (User account : getAccounts()) {
+                pointInTime.track(account);
+            }
+            return null;
+        });
+    }
+
+    public void applyReplicatedTick(String[] symbols, double[] prices, long[] volumes, int count) {
+        tickLock.lock();
+        marketWritesStarted.incrementAndGet();
+        try {
+            CompletableFuture<?>[] updates = new CompletableFuture<?>[shards.length];
+            for (int s = 0; s < shards.length; s++) {
+                EngineShard shard = shards[s];
+                updates[s] = shard.submit(() -> {
+                    for (int i = 0; i < count; i++) {
+                        Stock stock = shard.stocks().get(symbols[i]);
+                        if (stock != null) {
+                            stock.applyQuote(prices[i], volumes[i]);
+                        }
+                    }
+                });
+            }
+            await(CompletableFuture.allOf(updates));
+            tickCompleted();
+        } finally {
+            marketWritesFinished.incrementAndGet();
+            tickLock.unlock();
+        }
+    }
+
+    public void applyReplicatedFill(String userId, Transaction tx) {
+        User user = getAccount(userId);
+        if (user == null) {
+            System.err.println("Replicated fill for unknown account " + userId);
+            return;
+        }
+        await(shardFor(tx.getSymbol()).submitOrder(() -> {
+            synchronized (user) {
+                user.applyFill(tx);
+                fillCompleted(user, tx);
+            }
+            return true;
+        }));
+    }
+
+    public void applyReplicatedSession(SessionState state) {
+        tickLock.lock();
+        try {
+            if (state != sessionState) {
+                changeSession(state);
+            }
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    public void applyReplicatedAccount(User user) {
+        User current = currentUser;
+        if (current != null && current.getUserId().equals(user.getUserId())) {
+            currentUser = user;
+        }
+        registerAccount(user);
+    }
+
+    // Trading sessions
+
+    /**
+     * Opens a new session, rolling the open and previous close of every
+     * stock to its last price on the owning shards.
+     */
+    public void openSession() {
+        tickLock.lock();
+        try {
+            if (sessionState == SessionState.OPEN)
+                return;
+            changeSession(SessionState.OPEN);
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the session and starts the end-of-day batch in the background:
+     * every account is marked to the closing prices and gets a statement.
+     * Orders are rejected and prices hold until the next open. Closing a
+     * closed session returns the last batch, or null when no session was
+     * traded since startup.
+     */
+    public CompletableFuture<EndOfDayReport> closeSession() {
+        tickLock.lock();
+        try {
+            if (sessionState == SessionState.CLOSED)
+                return lastEndOfDay != null ? lastEndOfDay : CompletableFuture.completedFuture(null);
+            changeSession(SessionState.CLOSED);
+            long closedAt = System.currentTimeMillis();
+            Map<String, Double> closingPrices = new HashMap<>(stocks.size() * 2);
+            for (Stock stock : stocks.values()) {
+                closingPrices.put(stock.getSymbol(), stock.getCurrentPrice());
+            }
+            SessionSchedule schedule = sessionSchedule;
+            java.time.LocalDate sessionDate = schedule != null ? schedule.dateOf(sessionOpenedMillis)
+                    : java.time.Instant.ofEpochMilli(sessionOpenedMillis).atZone(java.time.ZoneId.systemDefault())
+                            .toLocalDate();
+            EndOfDayBatch batch = new EndOfDayBatch(this, closingPrices, sessionOpenedMillis, closedAt, sessionDate,
+                    statementDir, endOfDayWindowMillis);
+            List<User> accounts = getAccounts();
+            lastEndOfDay = CompletableFuture.supplyAsync(() -> batch.run(accounts),
+                    r -> {
+                        Thread thread = new Thread(r, "end-of-day-batch");
+                        thread.setDaemon(true);
+                        thread.start();
+                    });
+            return lastEndOfDay;
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    /**
+     * Switches the session with tickLock held. Closing flips the state before
+     * the shards are visited, so once each shard has run its task no order
+     * can fill until the next open.
+     */
+    private void changeSession(SessionState state) {
+        if (state == SessionState.CLOSED) {
+            sessionState = state;
+            CompletableFuture<?>[] barriers = new CompletableFuture<?>[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                barriers[i] = shards[i].submit(() -> {
+                });
+            }
+            await(CompletableFuture.allOf(barriers));
+        } else {
+            marketWritesStarted.incrementAndGet();
+            try {
+                CompletableFuture<?>[] rolls = new CompletableFuture<?>[shards.length];
+                for (int i = 0; i < shards.length; i++) {
+                    EngineShard shard = shards[i];
+                    rolls[i] = shard.submit(() -> {
+                        for (Stock stock : shard.stocks().values()) {
+                            stock.rollSession();
+                        }
+                    });
+                }
+                await(CompletableFuture.allOf(rolls));
+                sessionOpenedMillis = System.currentTimeMillis();
+                sessionState = state;
+                tickVersion++; // every quote's open and previous close changed
+            } finally {
+                marketWritesFinished.incrementAndGet();
+            }
+        }
+        for (EngineListener listener : listeners) {
+            listener.onSessionChange(state);
+        }
+    }
+
+    public SessionState getSessionState() {
+        return sessionState;
+    }
+
+    public long getSessionOpenedMillis() {
+        return sessionOpenedMillis;
+    }
+
+    /**
+     * Opens and closes sessions on the tick that crosses a scheduled time;
+     * null leaves sessions to openSession() and closeSession().
+     */
+    public void setSessionSchedule(SessionSchedule schedule) {
+        this.sessionSchedule = schedule;
+    }
+
+    public SessionSchedule getSessionSchedule() {
+        return sessionSchedule;
+    }
+
+    public void setEndOfDayWindow(long millis) {
+        this.endOfDayWindowMillis = millis;
+    }
+
+    /**
+     * Where end-of-day statements are written, by default next to the archive
+     * directory; null keeps them in the report instead.
+     */
+    public void setStatementDirectory(File directory) {
+        this.statementDir = directory;
+    }
+
+    // Data persistence
+
+    public void setSnapshotInterval(long millis) {
+        this.snapshotIntervalMillis = millis;
+    }
+
+    public long getSnapshotInterval() {
+        return snapshotIntervalMillis;
+    }
+
+    /**
+     * Snapshot metrics, or null when the engine has no data file.
+     */
+    public SnapshotWriter getSnapshotWriter() {
+        return snapshotWriter;
+    }
+
+    // Called with tickLock held
+    private void maybeSnapshot() {
+        long now = System.currentTimeMillis();
+        if (snapshotWriter == null || now - lastSnapshotMillis < snapshotIntervalMillis)
+            return;
+        lastSnapshotMillis = now;
+        snapshotWriter.submit(captureSnapshot());
+    }
+
+    /**
+     * Requests a snapshot now, regardless of the interval.
+     */
+    public void requestSnapshot() {
+        if (snapshotWriter != null) {
+            quiesce(() -> {
+                lastSnapshotMillis = System.currentTimeMillis();
+                snapshotWriter.submit(captureSnapshot());
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Copies the persisted state with the shards quiesced, so the copy is
+     * consistent with ticks and trades on every shard. Copies are never
+     * changed once taken, so accounts untouched since the last capture reuse
+     * their previous copy and the pause grows with the accounts that traded,
+     * not with all of them.
+     */
+    EngineSnapshot captureSnapshot() {
+        return quiesce(() -> {
+            long start = System.nanoTime();
+            Map<String, Stock> stockCopy = new HashMap<>(stocks.size() * 2);
+            for (Stock stock : stocks.values()) {
+                stockCopy.put(stock.getSymbol(), stock.copy());
+            }
+            Map<String, User> accountCopy = new LinkedHashMap<>();
+            Map<User, User> copies = new IdentityHashMap<>();
+            for (User account : getAccounts()) {
+                User copy = snapshotCopies.get(account);
+                if (copy == null || copy.getVersion() != account.getVersion()) {
+                    copy = account.copy();
+                }
+                copies.put(account, copy);
+                accountCopy.put(account.getUserId(), copy);
+            }
+            snapshotCopies = copies;
+            User current = currentUser;
+            User userCopy = current == null ? null : accountCopy.get(current.getUserId());
+            return new EngineSnapshot(stockCopy, userCopy, accountCopy, System.nanoTime() - start);
+        });
+    }
+
+    /**
+     * Writes a final snapshot, stops the shards and waits for the writer to
+     * finish.
+     */
+    public void shutdown() {
+        if (stopped)
+            return;
+        requestSnapshot();
+        tickLock.lock();
+        try {
+            stopped = true;
+            for (EngineShard shard : shards) {
+                shard.shutdown();
+            }
+        } finally {
+            tickLock.unlock();
+        }
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown(10000);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadData() {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(dataFile)))) {
+            Map<String, Stock> loaded = (Map<String, Stock>) ois.readObject();
+            stocks.clear();
+            stocks.putAll(loaded);
+            universeVersion.incrementAndGet();
+            currentUser = (User) ois.readObject();
+            try {
+                accounts.putAll((Map<String, User>) ois.readObject());
+            } catch (EOFException e) {
+                // Written before all accounts were persisted
+            }
+        } catch (FileNotFoundException e) {
+            // File doesn't exist yet
+        } catch (Exception e) {
+            System.err.println("Error loading data: " + e.getMessage());
+        }
+    }
+}
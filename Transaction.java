@@ -0,0 +1,89 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Transaction Class - Represents a buy/sell transaction
+ */
+class Transaction implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String transactionId;
+    private String symbol;
+    private String type; // BUY or SELL
+    private int shares;
+    private double price;
+    private double totalAmount;
+    private Date timestamp;
+    private LotMethod lotMethod; // SELL only; null for histories without lot tracking
+    private long lotId; // specific lot closed first, 0 if none
+
+    public Transaction(String symbol, String type, int shares, double price) {
+        this.transactionId = "TX" + System.currentTimeMillis();
+        this.symbol = symbol;
+        this.type = type;
+        this.shares = shares;
+        this.price = price;
+        this.totalAmount = shares * price;
+        this.timestamp = new Date();
+    }
+
+    /**
+     * Restores a transaction read back from the history archive.
+     */
+    Transaction(String transactionId, String symbol, String type, int shares, double price, Date timestamp) {
+        this.transactionId = transactionId;
+        this.symbol = symbol;
+        this.type = type;
+        this.shares = shares;
+        this.price = price;
+        this.totalAmount = shares * price;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Records which lots a sell closed, so the lot ledger can be rebuilt from
+     * fill history.
+     */
+    Transaction withLotSelection(LotMethod lotMethod, long lotId) {
+        this.lotMethod = lotMethod;
+        this.lotId = lotId;
+        return this;
+    }
+
+    // Getters
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getShares() {
+        return shares;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public LotMethod getLotMethod() {
+        return lotMethod;
+    }
+
+    public long getLotId() {
+        return lotId;
+    }
+}
@@ -0,0 +1,577 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.*;
+
+/**
+ * TransactionArchive - Compressed columnar storage for old transaction history.
+ *
+ * History is rolled into immutable segment files of at most SEGMENT_ROWS rows.
+ * Each segment has a small uncompressed header (row count and time range, so
+ * scans can skip segments without inflating them) followed by a deflated body
+ * holding one column after another:
+ *
+ *   symbol dictionary, type dictionary,
+ *   timestamps      - zigzag varint deltas from the previous row
+ *   transaction ids - derived from the timestamp where possible
+ *   type ids        - varint dictionary codes
+ *   symbol ids      - varint dictionary codes
+ *   shares          - zigzag varints
+ *   prices          - fixed point (1/10000), zigzag delta from the last price
+ *                     of the same symbol
+ *   lot methods     - varint, 0 when not recorded (version 2)
+ *   lot ids         - varint, 0 when no specific lot (version 2)
+ */
+class TransactionArchive {
+    static final int SEGMENT_ROWS = 4096;
+
+    private static final int MAGIC = 0x54584152; // "TXAR"
+    private static final int VERSION = 2;
+    private static final String SEGMENT_SUFFIX = ".txa";
+
+    private final File directory;
+    private final List<SegmentInfo> segments = new ArrayList<>();
+    private final List<Transaction> pending = new ArrayList<>(); // handed over, not yet on disk
+    private int nextSegmentNo;
+    private long rowCount;
+
+    public TransactionArchive(File directory) {
+        this.directory = directory;
+        loadIndex();
+    }
+
+    /**
+     * Appends the given transactions, oldest first, as one or more new segments.
+     */
+    public void append(List<Transaction> rows) throws IOException {
+        synchronized (this) {
+            pending.addAll(rows);
+        }
+        flushPending();
+    }
+
+    /**
+     * Takes ownership of the rows immediately, so scans see them, and writes
+     * them on the given executor. Rows whose write fails stay pending and are
+     * retried by the next flush; the snapshot writer flushes before every
+     * snapshot.
+     */
+    public void appendAsync(List<Transaction> rows, java.util.concurrent.Executor executor) {
+        synchronized (this) {
+            pending.addAll(rows);
+        }
+        executor.execute(() -> {
+            try {
+                flushPending();
+            } catch (IOException e) {
+                System.err.println("Error archiving history: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Writes pending rows to new segments. File IO happens outside the lock so
+     * concurrent scans are not held up; callers must not flush concurrently.
+     */
+    public void flushPending() throws IOException {
+        List<Transaction> rows;
+        synchronized (this) {
+            rows = new ArrayList<>(pending);
+        }
+        if (rows.isEmpty())
+            return;
+        if (!directory.isDirectory()) {
+            if (!directory.mkdirs())
+                throw new IOException("Cannot create archive directory " + directory);
+            syncDirectory(directory.getAbsoluteFile().getParentFile());
+        }
+
+        for (int from = 0; from < rows.size(); from += SEGMENT_ROWS) {
+            List<Transaction> chunk = rows.subList(from, Math.min(rows.size(), from + SEGMENT_ROWS));
+            int segmentNo;
+            synchronized (this) {
+                segmentNo = nextSegmentNo;
+            }
+            File target = new File(directory, String.format("seg-%08d%s", segmentNo, SEGMENT_SUFFIX));
+            File temp = new File(directory, target.getName() + ".tmp");
+            try {
+                writeSegment(temp, chunk);
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory(directory); // the rename itself must survive a crash
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            SegmentInfo info = readHeader(target);
+
+            synchronized (this) {
+                segments.add(info);
+                nextSegmentNo = segmentNo + 1;
+                rowCount += chunk.size();
+                pending.subList(0, chunk.size()).clear();
+            }
+        }
+    }
+
+    /**
+     * Streams every archived row whose timestamp lies in [fromMillis, toMillis]
+     * to the visitor. Only one segment is decoded at a time and the cursor passed
+     * to the visitor is reused, so it must not be retained.
+     */
+    public void scan(long fromMillis, long toMillis, RowVisitor visitor) throws IOException {
+        scan(fromMillis, toMillis, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Like scan(from, to, visitor) but only over the first rowLimit rows in
+     * archive order, so a caller that read getRowCount() together with the
+     * rows not yet archived does not see rows archived since.
+     */
+    public void scan(long fromMillis, long toMillis, long rowLimit, RowVisitor visitor) throws IOException {
+        List<SegmentInfo> snapshot;
+        List<Transaction> unwritten;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+            unwritten = new ArrayList<>(pending);
+        }
+
+        ArchivedRow row = new ArchivedRow();
+        long remaining = rowLimit;
+        for (SegmentInfo segment : snapshot) {
+            if (remaining <= 0)
+                return;
+            int rows = (int) Math.min(segment.rows, remaining);
+            remaining -= segment.rows;
+            if (segment.maxTimestamp < fromMillis || segment.minTimestamp > toMillis)
+                continue;
+            row.load(segment);
+            visitRows(row, rows, fromMillis, toMillis, visitor);
+        }
+        for (int from = 0; from < unwritten.size() && remaining > 0; from += SEGMENT_ROWS) {
+            row.load(unwritten.subList(from, Math.min(unwritten.size(), from + SEGMENT_ROWS)));
+            int rows = (int) Math.min(row.size, remaining);
+            remaining -= row.size;
+            visitRows(row, rows, fromMillis, toMillis, visitor);
+        }
+    }
+
+    /**
+     * Streams rows [fromRow, toRow) in archive order, oldest first. Segments
+     * wholly outside the range are skipped without being inflated.
+     */
+    public void scanRows(long fromRow, long toRow, RowVisitor visitor) throws IOException {
+        List<SegmentInfo> snapshot;
+        List<Transaction> unwritten;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+            unwritten = new ArrayList<>(pending);
+        }
+
+        ArchivedRow row = new ArchivedRow();
+        long base = 0;
+        for (SegmentInfo segment : snapshot) {
+            if (base >= toRow)
+                return;
+            if (base + segment.rows > fromRow) {
+                row.load(segment);
+                visitRange(row, fromRow - base, Math.min(segment.rows, toRow - base), visitor);
+            }
+            base += segment.rows;
+        }
+        for (int from = 0; from < unwritten.size() && base < toRow; from += SEGMENT_ROWS) {
+            row.load(unwritten.subList(from, Math.min(unwritten.size(), from + SEGMENT_ROWS)));
+            if (base + row.size > fromRow) {
+                visitRange(row, fromRow - base, Math.min(row.size, toRow - base), visitor);
+            }
+            base += row.size;
+        }
+    }
+
+    private static void visitRange(ArchivedRow row, long from, long to, RowVisitor visitor) throws IOException {
+        for (int i = (int) Math.max(0, from); i < to; i++) {
+            row.index = i;
+            visitor.visit(row);
+        }
+    }
+
+    private static void visitRows(ArchivedRow row, int rows, long fromMillis, long toMillis, RowVisitor visitor)
+            throws IOException {
+        for (int i = 0; i < rows; i++) {
+            long ts = row.timestamps[i];
+            if (ts < fromMillis || ts > toMillis)
+                continue;
+            row.index = i;
+            visitor.visit(row);
+        }
+    }
+
+    public void scan(RowVisitor visitor) throws IOException {
+        scan(Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Convenience scan that materializes each row as a Transaction.
+     */
+    public void forEach(long fromMillis, long toMillis, Consumer<Transaction> action) throws IOException {
+        forEach(fromMillis, toMillis, Long.MAX_VALUE, action);
+    }
+
+    public void forEach(long fromMillis, long toMillis, long rowLimit, Consumer<Transaction> action)
+            throws IOException {
+        scan(fromMillis, toMillis, rowLimit, row -> action.accept(row.toTransaction()));
+    }
+
+    public synchronized long getRowCount() {
+        return rowCount + pending.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getMaxTimestamp() {
+        long max = Long.MIN_VALUE;
+        for (SegmentInfo segment : segments) {
+            max = Math.max(max, segment.maxTimestamp);
+        }
+        for (Transaction tx : pending) {
+            max = Math.max(max, tx.getTimestamp().getTime());
+        }
+        return max;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private void loadIndex() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null)
+            return;
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            try {
+                SegmentInfo info = readHeader(file);
+                segments.add(info);
+                rowCount += info.rows;
+                nextSegmentNo = Math.max(nextSegmentNo, info.segmentNo + 1);
+            } catch (IOException e) {
+                System.err.println("Skipping unreadable archive segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Segment encoding
+
+    /**
+     * Flushes a directory's entries to disk, so a rename into it is durable.
+     * Platforms that cannot open a directory (Windows) make this a no-op.
+     */
+    static void syncDirectory(File dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static void writeSegment(File file, List<Transaction> rows) throws IOException {
+        int n = rows.size();
+        long minTs = Long.MAX_VALUE;
+        long maxTs = Long.MIN_VALUE;
+        Map<String, Integer> symbolIds = new LinkedHashMap<>();
+        Map<String, Integer> typeIds = new LinkedHashMap<>();
+        for (Transaction tx : rows) {
+            long ts = tx.getTimestamp().getTime();
+            minTs = Math.min(minTs, ts);
+            maxTs = Math.max(maxTs, ts);
+            symbolIds.putIfAbsent(tx.getSymbol(), symbolIds.size());
+            typeIds.putIfAbsent(tx.getType(), typeIds.size());
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+                DataOutputStream header = new DataOutputStream(new BufferedOutputStream(fos))) {
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(n);
+            header.writeLong(minTs);
+            header.writeLong(maxTs);
+
+            DeflaterOutputStream deflater = new DeflaterOutputStream(header, new Deflater(Deflater.BEST_SPEED), 8192);
+            DataOutputStream out = new DataOutputStream(deflater);
+
+            ColumnCodec.writeVarLong(out, symbolIds.size());
+            for (String symbol : symbolIds.keySet()) {
+                out.writeUTF(symbol);
+            }
+            ColumnCodec.writeVarLong(out, typeIds.size());
+            for (String type : typeIds.keySet()) {
+                out.writeUTF(type);
+            }
+
+            long prev = minTs;
+            for (Transaction tx : rows) {
+                long ts = tx.getTimestamp().getTime();
+                ColumnCodec.writeSignedVarLong(out, ts - prev);
+                prev = ts;
+            }
+            for (Transaction tx : rows) {
+                writeTransactionId(out, tx);
+            }
+            for (Transaction tx : rows) {
+                ColumnCodec.writeVarLong(out, typeIds.get(tx.getType()));
+            }
+            for (Transaction tx : rows) {
+                ColumnCodec.writeVarLong(out, symbolIds.get(tx.getSymbol()));
+            }
+            for (Transaction tx : rows) {
+                ColumnCodec.writeSignedVarLong(out, tx.getShares());
+            }
+            long[] lastPrice = new long[symbolIds.size()];
+            for (Transaction tx : rows) {
+                int sid = symbolIds.get(tx.getSymbol());
+                long fixed = ColumnCodec.toFixed(tx.getPrice());
+                ColumnCodec.writeSignedVarLong(out, fixed - lastPrice[sid]);
+                lastPrice[sid] = fixed;
+            }
+            for (Transaction tx : rows) {
+                ColumnCodec.writeVarLong(out, tx.getLotMethod() == null ? 0 : tx.getLotMethod().ordinal() + 1);
+            }
+            for (Transaction tx : rows) {
+                ColumnCodec.writeVarLong(out, tx.getLotId());
+            }
+            out.flush();
+            deflater.finish();
+            header.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * Transaction ids are "TX" + creation millis, which is within a few
+     * milliseconds of the timestamp. Those are stored as (delta + 1); a zero
+     * marks an id that does not follow the pattern and is stored verbatim.
+     */
+    private static void writeTransactionId(DataOutputStream out, Transaction tx) throws IOException {
+        String id = tx.getTransactionId();
+        if (id != null && id.length() > 2 && id.startsWith("TX")) {
+            try {
+                long idMillis = Long.parseLong(id.substring(2));
+                long delta = idMillis - tx.getTimestamp().getTime();
+                if (Long.toString(idMillis).length() == id.length() - 2) {
+                    ColumnCodec.writeVarLong(out, ColumnCodec.zigzag(delta) + 1);
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to verbatim storage
+            }
+        }
+        ColumnCodec.writeVarLong(out, 0);
+        out.writeUTF(id == null ? "" : id);
+    }
+
+    private static SegmentInfo readHeader(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not an archive segment");
+            int version = in.readInt();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported segment version " + version);
+            SegmentInfo info = new SegmentInfo();
+            info.file = file;
+            info.version = version;
+            info.rows = in.readInt();
+            info.minTimestamp = in.readLong();
+            info.maxTimestamp = in.readLong();
+            String name = file.getName();
+            info.segmentNo = Integer.parseInt(name.substring(4, name.length() - SEGMENT_SUFFIX.length()));
+            return info;
+        }
+    }
+
+    private static class SegmentInfo {
+        File file;
+        int version;
+        int segmentNo;
+        int rows;
+        long minTimestamp;
+        long maxTimestamp;
+    }
+
+    /**
+     * Callback for streaming scans.
+     */
+    interface RowVisitor {
+        void visit(ArchivedRow row) throws IOException;
+    }
+
+    /**
+     * ArchivedRow - Reusable cursor over one decoded segment.
+     */
+    static class ArchivedRow {
+        private int size;
+        private int index;
+        private long[] timestamps = new long[SEGMENT_ROWS];
+        private long[] idDeltas = new long[SEGMENT_ROWS];
+        private String[] verbatimIds = new String[SEGMENT_ROWS];
+        private int[] typeIds = new int[SEGMENT_ROWS];
+        private int[] symbolIds = new int[SEGMENT_ROWS];
+        private int[] shares = new int[SEGMENT_ROWS];
+        private long[] prices = new long[SEGMENT_ROWS];
+        private int[] lotMethods = new int[SEGMENT_ROWS];
+        private long[] lotIds = new long[SEGMENT_ROWS];
+        private String[] symbols;
+        private String[] types;
+
+        /**
+         * Loads rows that are still in memory into the same columns.
+         */
+        private void load(List<Transaction> rows) {
+            size = rows.size();
+            Map<String, Integer> symbolCodes = new HashMap<>();
+            Map<String, Integer> typeCodes = new HashMap<>();
+            List<String> symbolList = new ArrayList<>();
+            List<String> typeList = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Transaction tx = rows.get(i);
+                timestamps[i] = tx.getTimestamp().getTime();
+                verbatimIds[i] = tx.getTransactionId();
+                typeIds[i] = typeCodes.computeIfAbsent(tx.getType(), t -> {
+                    typeList.add(t);
+                    return typeList.size() - 1;
+                });
+                symbolIds[i] = symbolCodes.computeIfAbsent(tx.getSymbol(), t -> {
+                    symbolList.add(t);
+                    return symbolList.size() - 1;
+                });
+                shares[i] = tx.getShares();
+                prices[i] = ColumnCodec.toFixed(tx.getPrice());
+                lotMethods[i] = tx.getLotMethod() == null ? 0 : tx.getLotMethod().ordinal() + 1;
+                lotIds[i] = tx.getLotId();
+            }
+            symbols = symbolList.toArray(new String[0]);
+            types = typeList.toArray(new String[0]);
+        }
+
+        private void load(SegmentInfo segment) throws IOException {
+            try (DataInputStream header = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(segment.file)))) {
+                header.skipBytes(4 + 4 + 4 + 8 + 8);
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new InflaterInputStream(header), 8192));
+
+                size = segment.rows;
+                if (size > timestamps.length) {
+                    timestamps = new long[size];
+                    idDeltas = new long[size];
+                    verbatimIds = new String[size];
+                    typeIds = new int[size];
+                    symbolIds = new int[size];
+                    shares = new int[size];
+                    prices = new long[size];
+                    lotMethods = new int[size];
+                    lotIds = new long[size];
+                }
+
+                symbols = new String[(int) ColumnCodec.readVarLong(in)];
+                for (int i = 0; i < symbols.length; i++) {
+                    symbols[i] = in.readUTF();
+                }
+                types = new String[(int) ColumnCodec.readVarLong(in)];
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = in.readUTF();
+                }
+
+                long prev = segment.minTimestamp;
+                for (int i = 0; i < size; i++) {
+                    prev += ColumnCodec.readSignedVarLong(in);
+                    timestamps[i] = prev;
+                }
+                for (int i = 0; i < size; i++) {
+                    long code = ColumnCodec.readVarLong(in);
+                    if (code == 0) {
+                        verbatimIds[i] = in.readUTF();
+                    } else {
+                        verbatimIds[i] = null;
+                        idDeltas[i] = ColumnCodec.unzigzag(code - 1);
+                    }
+                }
+                for (int i = 0; i < size; i++) {
+                    typeIds[i] = (int) ColumnCodec.readVarLong(in);
+                }
+                for (int i = 0; i < size; i++) {
+                    symbolIds[i] = (int) ColumnCodec.readVarLong(in);
+                }
+                for (int i = 0; i < size; i++) {
+                    shares[i] = (int) ColumnCodec.readSignedVarLong(in);
+                }
+                long[] lastPrice = new long[symbols.length];
+                for (int i = 0; i < size; i++) {
+                    int sid = symbolIds[i];
+                    lastPrice[sid] += ColumnCodec.readSignedVarLong(in);
+                    prices[i] = lastPrice[sid];
+                }
+                if (segment.version >= 2) {
+                    for (int i = 0; i < size; i++) {
+                        lotMethods[i] = (int) ColumnCodec.readVarLong(in);
+                    }
+                    for (int i = 0; i < size; i++) {
+                        lotIds[i] = ColumnCodec.readVarLong(in);
+                    }
+                } else {
+                    Arrays.fill(lotMethods, 0, size, 0);
+                    Arrays.fill(lotIds, 0, size, 0L);
+                }
+            }
+        }
+
+        public long getTimestamp() {
+            return timestamps[index];
+        }
+
+        public String getTransactionId() {
+            String verbatim = verbatimIds[index];
+            return verbatim != null ? verbatim : "TX" + (timestamps[index] + idDeltas[index]);
+        }
+
+        public String getSymbol() {
+            return symbols[symbolIds[index]];
+        }
+
+        public String getType() {
+            return types[typeIds[index]];
+        }
+
+        public int getShares() {
+            return shares[index];
+        }
+
+        public double getPrice() {
+            return ColumnCodec.fromFixed(prices[index]);
+        }
+
+        public double getTotalAmount() {
+            return getShares() * getPrice();
+        }
+
+        public LotMethod getLotMethod() {
+            int code = lotMethods[index];
+            return code == 0 ? null : LotMethod.values()[code - 1];
+        }
+
+        public long getLotId() {
+            return lotIds[index];
+        }
+
+        public Transaction toTransaction() {
+            return new Transaction(getTransactionId(), getSymbol(), getType(), getShares(), getPrice(),
+                    new Date(getTimestamp())).withLotSelection(getLotMethod(), getLotId());
+        }
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * UniverseAction - What an intraday reference data delta does to a symbol
+ */
+enum UniverseAction {
+    ADD, DELIST, CHANGE
+}
@@ -0,0 +1,148 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * User Class - Represents a trading platform user
+ */
+class User implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String userId;
+    private String name;
+    private double cashBalance;
+    private Portfolio portfolio;
+    private List<Transaction> transactionHistory;
+    private TaxLotLedger lotLedger; // null when loaded from data saved before lot tracking
+    private transient long version; // bumped on every change, so snapshots copy only changed accounts
+
+    public User(String userId, String name, double initialBalance) {
+        this.userId = userId;
+        this.name = name;
+        this.cashBalance = initialBalance;
+        this.portfolio = new Portfolio();
+        this.transactionHistory = new ArrayList<>();
+        this.lotLedger = new TaxLotLedger();
+    }
+
+    public boolean buyStock(String symbol, int shares, double price) {
+        double totalCost = shares * price;
+        if (cashBalance < totalCost)
+            return false;
+
+        applyFill(new Transaction(symbol, "BUY", shares, price));
+        return true;
+    }
+
+    public boolean sellStock(String symbol, int shares, double price) {
+        return sellStock(symbol, shares, price, null, 0);
+    }
+
+    /**
+     * Sells shares, closing lots by the given method (the ledger default when
+     * null). For LotMethod.SPECIFIC, lotId names the lot to close first.
+     */
+    public boolean sellStock(String symbol, int shares, double price, LotMethod method, long lotId) {
+        if (portfolio.getShares(symbol) < shares)
+            return false;
+
+        LotMethod lotMethod = method;
+        if (lotLedger != null) {
+            if (lotMethod == null)
+                lotMethod = lotLedger.getDefaultMethod();
+            if (!lotLedger.canClose(symbol, shares, lotMethod, lotId))
+                return false;
+        }
+
+        applyFill(new Transaction(symbol, "SELL", shares, price)
+                .withLotSelection(lotMethod, lotMethod == LotMethod.SPECIFIC ? lotId : 0));
+        return true;
+    }
+
+    /**
+     * Applies an already validated fill to cash, holdings, lots and history.
+     * Also used to replay fills received from a primary engine.
+     */
+    void applyFill(Transaction tx) {
+        if ("BUY".equals(tx.getType())) {
+            cashBalance -= tx.getTotalAmount();
+            portfolio.addHolding(tx.getSymbol(), tx.getShares(), tx.getPrice());
+        } else {
+            cashBalance += tx.getTotalAmount();
+            portfolio.removeHolding(tx.getSymbol(), tx.getShares());
+        }
+        if (lotLedger != null) {
+            lotLedger.apply(tx);
+        }
+        transactionHistory.add(tx);
+        version++;
+    }
+
+    Transaction getLastTransaction() {
+        return transactionHistory.isEmpty() ? null : transactionHistory.get(transactionHistory.size() - 1);
+    }
+
+    // Getters
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getCashBalance() {
+        return cashBalance;
+    }
+
+    public Portfolio getPortfolio() {
+        return portfolio;
+    }
+
+    /**
+     * Recent transactions still held in memory. Older history lives in the
+     * user's TransactionArchive.
+     */
+    public List<Transaction> getTransactionHistory() {
+        return transactionHistory;
+    }
+
+    public TaxLotLedger getLotLedger() {
+        return lotLedger;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    void setLotLedger(TaxLotLedger lotLedger) {
+        this.lotLedger = lotLedger;
+        version++;
+    }
+
+    /**
+     * Point-in-time copy for snapshots. Transactions are immutable once
+     * recorded and lot columns are copy-on-write, so this is cheap.
+     */
+    User copy() {
+        User copy = new User(userId, name, cashBalance);
+        copy.portfolio = portfolio.copy();
+        copy.transactionHistory = new ArrayList<>(transactionHistory);
+        copy.lotLedger = lotLedger == null ? null : lotLedger.copy();
+        copy.version = version;
+        return copy;
+    }
+
+    /**
+     * Removes and returns the oldest transactions, leaving the most recent
+     * keepRecent entries in memory.
+     */
+    List<Transaction> drainOldestTransactions(int keepRecent) {
+        int count = transactionHistory.size() - keepRecent;
+        if (count <= 0)
+            return Collections.emptyList();
+        List<Transaction> oldest = new ArrayList<>(transactionHistory.subList(0, count));
+        transactionHistory.subList(0, count).clear();
+        version++;
+        return oldest;
+    }
+}